@@ -23,21 +23,37 @@ package com.docdoku.api;
 import com.docdoku.api.client.ApiClient;
 import com.docdoku.api.client.ApiException;
 import com.docdoku.api.client.ApiResponse;
+import com.docdoku.api.http.AdaptiveConcurrencyLimiter;
+import com.docdoku.api.http.CircuitBreaker;
+import com.docdoku.api.http.CompressionInterceptor;
+import com.docdoku.api.http.PhaseTimer;
+import com.docdoku.api.http.RequestMetrics;
+import com.docdoku.api.http.RetryInterceptor;
 import com.docdoku.api.models.AccountDTO;
 import com.docdoku.api.models.LoginRequestDTO;
 import com.docdoku.api.services.AuthApi;
+import com.docdoku.api.transport.HttpTransport;
+import com.docdoku.api.transport.TransportInterceptor;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.Dispatcher;
 import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Response;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class helps to create an ApiClient with several authentication methods
+ * <p>
+ * Static methods use a default factory. Use {@link #builder()} to get a factory with tuned
+ * connection pool, dispatcher and timeouts; all clients created by a factory share its
+ * connection pool and dispatcher.
  *
  * @Author Morgan Guimard
  */
@@ -45,6 +61,47 @@ public class DocDokuPLMClientFactory {
 
     private static final Logger LOGGER = Logger.getLogger(DocDokuPLMClientFactory.class.getName());
 
+    private static final DocDokuPLMClientFactory DEFAULT_FACTORY = builder().build();
+
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final long connectTimeout;
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final long tokenRefreshMargin;
+    private final RequestMetrics requestMetrics;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryInterceptor retryInterceptor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final CompressionInterceptor compressionInterceptor;
+    private final PhaseTimer phaseTimer;
+    private final HttpTransport transport;
+
+    private DocDokuPLMClientFactory(Builder builder) {
+        connectionPool = new ConnectionPool(builder.maxIdleConnections, builder.keepAliveDuration);
+        dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+        connectTimeout = builder.connectTimeout;
+        readTimeout = builder.readTimeout;
+        writeTimeout = builder.writeTimeout;
+        tokenRefreshMargin = builder.tokenRefreshMargin;
+        requestMetrics = builder.requestMetrics;
+        circuitBreaker = builder.circuitBreaker;
+        retryInterceptor = builder.retryInterceptor;
+        concurrencyLimiter = builder.concurrencyLimiter;
+        compressionInterceptor = builder.compressionInterceptor;
+        phaseTimer = builder.phaseTimer;
+        transport = builder.transport;
+    }
+
+    /**
+     * Get a builder for a factory sharing one connection pool and dispatcher
+     **/
+    public static Builder builder() {
+        return new Builder();
+    }
+
     /**
      * Create a guest client, no debug
      **/
@@ -56,11 +113,7 @@ public class DocDokuPLMClientFactory {
      * Create a guest client, control debug
      **/
     public static ApiClient createClient(String host, boolean debug) {
-        ApiClient client = new ApiClient();
-        client.setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"));
-        client.setBasePath(host);
-        client.setDebugging(debug);
-        return client;
+        return DEFAULT_FACTORY.newClient(host, debug);
     }
 
     /**
@@ -78,9 +131,7 @@ public class DocDokuPLMClientFactory {
      * Soon to be deprecated, consider using createJWTClient instead
      **/
     public static ApiClient createBasicClient(String host, String login, String password, boolean debug) {
-        ApiClient client = createClient(host, debug);
-        client.addDefaultHeader("Authorization", Credentials.basic(login, password));
-        return client;
+        return DEFAULT_FACTORY.newBasicClient(host, login, password, debug);
     }
 
     /**
@@ -94,30 +145,7 @@ public class DocDokuPLMClientFactory {
      * Create a jwt client, control debug
      **/
     public static ApiClient createJWTClient(String host, String login, String password, boolean debug) {
-
-        final ApiClient client = createClient(host, debug);
-
-        client.getHttpClient().networkInterceptors().add(new Interceptor() {
-            @Override
-            public Response intercept(Chain chain) throws IOException {
-                Response response = chain.proceed(chain.request());
-                String jwt = response.header("jwt");
-                if (jwt != null && !jwt.isEmpty()) {
-                    LOGGER.log(Level.FINEST, "JWT token received " + jwt);
-                    client.addDefaultHeader("Authorization", "Bearer " + jwt);
-                }
-                return response;
-            }
-        });
-
-        try {
-            connect(client, login, password);
-            LOGGER.log(Level.FINEST, "Connected");
-        } catch (ApiException e) {
-            LOGGER.log(Level.SEVERE, "Exception while trying to get a token", e);
-        }
-
-        return client;
+        return DEFAULT_FACTORY.newJWTClient(host, login, password, debug);
     }
 
     /**
@@ -131,9 +159,7 @@ public class DocDokuPLMClientFactory {
      * Create a jwt client from host and token, debug control
      **/
     public static ApiClient createJWTClient(String host, String token, boolean debug) {
-        final ApiClient client = createClient(host, debug);
-        client.addDefaultHeader("Authorization", "Bearer " + token);
-        return client;
+        return DEFAULT_FACTORY.newJWTClient(host, token, debug);
     }
 
 
@@ -152,7 +178,115 @@ public class DocDokuPLMClientFactory {
      * Soon to be deprecated, consider using createJWTClient instead
      **/
     public static ApiClient createCookieClient(String host, String login, String password, boolean debug) {
-        final ApiClient client = createClient(host, debug);
+        return DEFAULT_FACTORY.newCookieClient(host, login, password, debug);
+    }
+
+    /**
+     * Create a guest client sharing this factory connection pool, no debug
+     **/
+    public ApiClient newClient(String host) {
+        return newClient(host, false);
+    }
+
+    /**
+     * Create a guest client sharing this factory connection pool, control debug
+     **/
+    public ApiClient newClient(String host, boolean debug) {
+        ApiClient client = new StreamingApiClient();
+        client.setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"));
+        client.setBasePath(host);
+        client.setDebugging(debug);
+        configureHttpClient(client.getHttpClient());
+        return client;
+    }
+
+    /**
+     * Create a basic client sharing this factory connection pool, no debug
+     **/
+    public ApiClient newBasicClient(String host, String login, String password) {
+        return newBasicClient(host, login, password, false);
+    }
+
+    /**
+     * Create a basic client sharing this factory connection pool, control debug
+     **/
+    public ApiClient newBasicClient(String host, String login, String password, boolean debug) {
+        ApiClient client = newClient(host, debug);
+        client.addDefaultHeader("Authorization", Credentials.basic(login, password));
+        return client;
+    }
+
+    /**
+     * Create a jwt client sharing this factory connection pool, no debug
+     **/
+    public ApiClient newJWTClient(String host, String login, String password) {
+        return newJWTClient(host, login, password, false);
+    }
+
+    /**
+     * Create a jwt client sharing this factory connection pool, control debug
+     **/
+    public ApiClient newJWTClient(String host, String login, String password, boolean debug) {
+        return newJWTClient(newJWTTokenManager(host, login, password, debug), host, debug);
+    }
+
+    /**
+     * Create a jwt client sharing this factory connection pool, its token kept valid by the given manager
+     **/
+    public ApiClient newJWTClient(JWTTokenManager tokenManager, String host, boolean debug) {
+
+        final ApiClient client = newClient(host, debug);
+
+        client.getHttpClient().interceptors().add(tokenManager.getAuthorizationInterceptor());
+        client.getHttpClient().networkInterceptors().add(tokenManager.getTokenCaptureInterceptor());
+
+        if (tokenManager.getToken() == null) {
+            try {
+                tokenManager.refreshToken();
+                LOGGER.log(Level.FINEST, "Connected");
+            } catch (ApiException e) {
+                LOGGER.log(Level.SEVERE, "Exception while trying to get a token", e);
+            }
+        }
+
+        return client;
+    }
+
+    /**
+     * Create a token manager logging in with its own client sharing this factory connection pool
+     **/
+    public JWTTokenManager newJWTTokenManager(String host, String login, String password, boolean debug) {
+        return new JWTTokenManager(newClient(host, debug), login, password, tokenRefreshMargin);
+    }
+
+    /**
+     * Create a jwt client from host and token sharing this factory connection pool, no debug
+     **/
+    public ApiClient newJWTClient(String host, String token) {
+        return newJWTClient(host, token, false);
+    }
+
+    /**
+     * Create a jwt client from host and token sharing this factory connection pool, debug control
+     **/
+    public ApiClient newJWTClient(String host, String token, boolean debug) {
+        final ApiClient client = newClient(host, debug);
+        client.addDefaultHeader("Authorization", "Bearer " + token);
+        return client;
+    }
+
+    /**
+     * Create a cookie client sharing this factory connection pool, no debug
+     **/
+    public ApiClient newCookieClient(String host, String login, String password) {
+        return newCookieClient(host, login, password, false);
+    }
+
+    /**
+     * Create a cookie client sharing this factory connection pool, control debug
+     **/
+    public ApiClient newCookieClient(String host, String login, String password, boolean debug) {
+        final ApiClient client = newClient(host, debug);
 
         client.getHttpClient().networkInterceptors().add(new Interceptor() {
             @Override
@@ -176,6 +310,54 @@ public class DocDokuPLMClientFactory {
         return client;
     }
 
+    /**
+     * Get the connection pool shared by the clients of this factory
+     **/
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Get the dispatcher shared by the clients of this factory
+     **/
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    private void configureHttpClient(OkHttpClient httpClient) {
+        httpClient.setConnectionPool(connectionPool);
+        httpClient.setDispatcher(dispatcher);
+        httpClient.setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+        httpClient.setReadTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        httpClient.setWriteTimeout(writeTimeout, TimeUnit.MILLISECONDS);
+        // Outermost: metrics record the calls as seen by the caller, fast-failed and retried ones included
+        if (requestMetrics != null) {
+            httpClient.interceptors().add(requestMetrics);
+        }
+        // Outside the retry interceptor: the circuit records the outcome of the last attempt
+        if (circuitBreaker != null) {
+            httpClient.interceptors().add(circuitBreaker);
+        }
+        if (retryInterceptor != null) {
+            httpClient.interceptors().add(retryInterceptor);
+        }
+        // Inside the retry interceptor: each attempt takes a permit, none is held during backoff
+        if (concurrencyLimiter != null) {
+            httpClient.interceptors().add(concurrencyLimiter);
+        }
+        if (compressionInterceptor != null) {
+            httpClient.interceptors().add(compressionInterceptor);
+        }
+        // Innermost application interceptor: the time spent in retry backoff or limiter queue is not a call phase
+        if (phaseTimer != null) {
+            phaseTimer.install(httpClient);
+        }
+        // Runs the interceptors added after it, such as the JWT ones, before handing the requests to the transport
+        if (transport != null) {
+            httpClient.interceptors().add(new TransportInterceptor(httpClient, transport));
+        }
+    }
+
     private static ApiResponse<AccountDTO> connect(ApiClient client, String login, String password) throws ApiException {
         LoginRequestDTO loginRequest = new LoginRequestDTO();
         loginRequest.setLogin(login);
@@ -189,6 +371,159 @@ public class DocDokuPLMClientFactory {
     }
 
     public static byte[] base64UrlDecode(String input) {
-        return Base64.getDecoder().decode(input);
+        return Base64.getUrlDecoder().decode(input);
+    }
+
+    /**
+     * Builder for a factory whose clients share one connection pool and dispatcher.
+     * <p>
+     * Defaults are the OkHttp ones: 5 idle connections kept alive 5 minutes, 64 concurrent
+     * requests, 5 per host, no timeout. A timeout of 0 means no timeout.
+     * JWT clients refresh their token one minute before it expires. Requests are not retried,
+     * their concurrency is not adapted, no circuit breaker applies, no metrics are recorded
+     * and request bodies are not compressed. Requests are sent by the OkHttp engine.
+     * Per-host concurrency applies to calls executed through the dispatcher (asynchronous calls).
+     **/
+    public static class Builder {
+
+        private int maxIdleConnections = 5;
+        private long keepAliveDuration = TimeUnit.MINUTES.toMillis(5);
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private long connectTimeout;
+        private long readTimeout;
+        private long writeTimeout;
+        private long tokenRefreshMargin = TimeUnit.MINUTES.toMillis(1);
+        private RequestMetrics requestMetrics;
+        private CircuitBreaker circuitBreaker;
+        private RetryInterceptor retryInterceptor;
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private CompressionInterceptor compressionInterceptor;
+        private PhaseTimer phaseTimer;
+        private HttpTransport transport;
+
+        private Builder() {
+        }
+
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections < 0: " + maxIdleConnections);
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        public Builder keepAliveDuration(long duration, TimeUnit unit) {
+            this.keepAliveDuration = toMillis("keepAliveDuration", duration, unit);
+            return this;
+        }
+
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) {
+                throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+            }
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeout = toMillis("connectTimeout", timeout, unit);
+            return this;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeout = toMillis("readTimeout", timeout, unit);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeout = toMillis("writeTimeout", timeout, unit);
+            return this;
+        }
+
+        public Builder tokenRefreshMargin(long margin, TimeUnit unit) {
+            this.tokenRefreshMargin = toMillis("tokenRefreshMargin", margin, unit);
+            return this;
+        }
+
+        /**
+         * Record the metrics of the requests of all clients
+         **/
+        public Builder metrics(RequestMetrics requestMetrics) {
+            this.requestMetrics = requestMetrics;
+            return this;
+        }
+
+        /**
+         * Fail fast the requests of the operations which keep failing, for all clients
+         **/
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Retry transient failures of the requests of all clients, sharing the interceptor retry budget
+         **/
+        public Builder retry(RetryInterceptor retryInterceptor) {
+            this.retryInterceptor = retryInterceptor;
+            return this;
+        }
+
+        /**
+         * Bound the concurrent requests of all clients with a limit adapted to the server health
+         **/
+        public Builder concurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Compress the large request bodies of all clients, and decompress gzip responses
+         **/
+        public Builder compression(CompressionInterceptor compressionInterceptor) {
+            this.compressionInterceptor = compressionInterceptor;
+            return this;
+        }
+
+        /**
+         * Time the phases of the calls of all clients, including the logins of JWT and cookie clients
+         **/
+        public Builder phaseTimer(PhaseTimer phaseTimer) {
+            this.phaseTimer = phaseTimer;
+            return this;
+        }
+
+        /**
+         * Send the requests of all clients with the given transport rather than the OkHttp engine,
+         * the pool, dispatcher and timeouts of the factory do not apply to them
+         **/
+        public Builder transport(HttpTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public DocDokuPLMClientFactory build() {
+            return new DocDokuPLMClientFactory(this);
+        }
+
+        private static long toMillis(String name, long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException(name + " < 0: " + duration);
+            }
+            long millis = unit.toMillis(duration);
+            if (millis > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(name + " too large: " + duration + " " + unit);
+            }
+            return millis;
+        }
     }
 }
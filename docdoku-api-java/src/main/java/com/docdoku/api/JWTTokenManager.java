@@ -0,0 +1,283 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.LoginRequestDTO;
+import com.docdoku.api.services.AuthApi;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class keeps the JWT token of a client valid.
+ * <p>
+ * The token expiry is decoded from its payload. The token is refreshed by the first request
+ * made within the refresh margin of the expiry while other requests keep using the still valid
+ * token, and a request rejected with a 401 is retried once with a refreshed token.
+ * Refreshes are single-flight and lock-free: concurrent callers share the same login call.
+ * Tokens sent back by the server in the jwt header replace the current one when they expire later.
+ */
+public class JWTTokenManager {
+
+    private static final Logger LOGGER = Logger.getLogger(JWTTokenManager.class.getName());
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String JWT_HEADER = "jwt";
+
+    private final ApiClient loginClient;
+    private final String login;
+    private final String password;
+    private final long refreshMargin;
+
+    private final AtomicReference<Token> token = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Token>> refresh = new AtomicReference<>();
+
+    /**
+     * @param loginClient   : the client used for login calls, must not use this manager interceptors
+     * @param login         : the user login
+     * @param password      : the user password
+     * @param refreshMargin : refresh the token when it expires in less than refreshMargin milliseconds
+     */
+    public JWTTokenManager(ApiClient loginClient, String login, String password, long refreshMargin) {
+        this.loginClient = loginClient;
+        this.login = login;
+        this.password = password;
+        this.refreshMargin = refreshMargin;
+        loginClient.getHttpClient().networkInterceptors().add(new TokenCaptureInterceptor());
+    }
+
+    /**
+     * Get the current token
+     *
+     * @return the current token, or null if not logged in
+     */
+    public String getToken() {
+        Token current = token.get();
+        return current != null ? current.value : null;
+    }
+
+    /**
+     * Get the current token expiration time
+     *
+     * @return the expiration time in milliseconds since epoch, Long.MAX_VALUE if unknown, 0 if not logged in
+     */
+    public long getExpirationTime() {
+        Token current = token.get();
+        return current != null ? current.expiresAt : 0;
+    }
+
+    /**
+     * Log in and replace the current token, sharing the login call with concurrent refreshes
+     *
+     * @return the new token
+     * @throws ApiException if the login fails
+     */
+    public String refreshToken() throws ApiException {
+        return awaitRefresh(token.get()).value;
+    }
+
+    /**
+     * Interceptor to add to the client application interceptors: authorizes requests and retries once on 401
+     */
+    public Interceptor getAuthorizationInterceptor() {
+        return new AuthorizationInterceptor();
+    }
+
+    /**
+     * Interceptor to add to the client network interceptors: captures tokens sent by the server
+     */
+    public Interceptor getTokenCaptureInterceptor() {
+        return new TokenCaptureInterceptor();
+    }
+
+    /**
+     * Decode the expiration time of a token
+     *
+     * @param jwt : the token
+     * @return the expiration time in milliseconds since epoch, Long.MAX_VALUE if the token has no expiration
+     */
+    public static long getExpirationTime(String jwt) {
+        try {
+            JsonObject payload = new JsonParser().parse(DocDokuPLMClientFactory.getTokenPayload(jwt)).getAsJsonObject();
+            JsonElement exp = payload.get("exp");
+            if (exp != null && !exp.isJsonNull()) {
+                return exp.getAsLong() * 1000;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cannot decode token expiration", e);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private Token validToken() {
+        Token current = token.get();
+        long now = System.currentTimeMillis();
+        if (current == null || now >= current.expiresAt) {
+            try {
+                return awaitRefresh(current);
+            } catch (ApiException e) {
+                LOGGER.log(Level.SEVERE, "Exception while trying to refresh the token", e);
+                return current;
+            }
+        }
+        if (now >= current.expiresAt - refreshMargin && refresh.get() == null) {
+            try {
+                return awaitRefresh(current);
+            } catch (ApiException e) {
+                LOGGER.log(Level.WARNING, "Exception while trying to refresh the token, keeping current one", e);
+            }
+        }
+        return current;
+    }
+
+    private Token awaitRefresh(Token stale) throws ApiException {
+        try {
+            return refresh(stale).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw new ApiException(e.getCause());
+        }
+    }
+
+    private CompletableFuture<Token> refresh(Token stale) {
+        while (true) {
+            CompletableFuture<Token> inFlight = refresh.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            Token current = token.get();
+            if (current != null && current != stale && !current.expiresWithin(refreshMargin)) {
+                // Already refreshed by another caller
+                return CompletableFuture.completedFuture(current);
+            }
+            CompletableFuture<Token> mine = new CompletableFuture<>();
+            if (refresh.compareAndSet(null, mine)) {
+                try {
+                    mine.complete(login());
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                } finally {
+                    refresh.set(null);
+                }
+                return mine;
+            }
+        }
+    }
+
+    private Token login() throws ApiException {
+        LoginRequestDTO loginRequest = new LoginRequestDTO();
+        loginRequest.setLogin(login);
+        loginRequest.setPassword(password);
+        Token before = token.get();
+        new AuthApi(loginClient).loginWithHttpInfo(loginRequest);
+        Token after = token.get();
+        if (after == null || after == before) {
+            throw new ApiException("No token received on login");
+        }
+        LOGGER.log(Level.FINEST, "Token refreshed");
+        return after;
+    }
+
+    private void offer(String jwt) {
+        Token received = new Token(jwt, getExpirationTime(jwt));
+        while (true) {
+            Token current = token.get();
+            if (current != null && current.expiresAt > received.expiresAt) {
+                return;
+            }
+            if (token.compareAndSet(current, received)) {
+                return;
+            }
+        }
+    }
+
+    private static Request authorize(Request request, Token token) {
+        if (token == null) {
+            return request;
+        }
+        return request.newBuilder().header(AUTHORIZATION_HEADER, "Bearer " + token.value).build();
+    }
+
+    private static final class Token {
+
+        private final String value;
+        private final long expiresAt;
+
+        private Token(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean expiresWithin(long margin) {
+            return System.currentTimeMillis() >= expiresAt - margin;
+        }
+    }
+
+    private class AuthorizationInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Token used = validToken();
+            Response response = chain.proceed(authorize(chain.request(), used));
+            if (response.code() != 401) {
+                return response;
+            }
+            Token refreshed;
+            try {
+                refreshed = awaitRefresh(used);
+            } catch (ApiException e) {
+                LOGGER.log(Level.SEVERE, "Exception while trying to refresh the token after a 401", e);
+                return response;
+            }
+            response.body().close();
+            LOGGER.log(Level.FINE, "Retrying request with a refreshed token");
+            return chain.proceed(authorize(chain.request(), refreshed));
+        }
+    }
+
+    private class TokenCaptureInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            String jwt = response.header(JWT_HEADER);
+            if (jwt != null && !jwt.isEmpty()) {
+                LOGGER.log(Level.FINEST, "JWT token received " + jwt);
+                offer(jwt);
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.async.ApiCall;
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.http.ApiOperation;
+import com.docdoku.api.transfer.DownloadTarget;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * ApiClient able to deliver the elements of list responses as they are parsed from the socket.
+ * <p>
+ * The response of a list call run through {@link #forEach(Class, ApiCall, Consumer)} is read with a
+ * streaming JsonReader: elements are passed one by one to a consumer and the list is never materialised,
+ * so large lists are read in a small constant heap. Clients created by {@link DocDokuPLMClientFactory}
+ * are streaming clients.
+ * <p>
+ * Requests built by the generated services are tagged with their {@link ApiOperation}. File downloads can be
+ * written straight to a {@link DownloadTarget} with {@link #download(DownloadTarget, ApiCall)}.
+ */
+public class StreamingApiClient extends ApiClient {
+
+    private final ThreadLocal<ElementSink<?>> sink = new ThreadLocal<>();
+    private final ThreadLocal<DownloadTarget> downloadTarget = new ThreadLocal<>();
+
+    /**
+     * Run a list call and pass its elements to the consumer as they are parsed, example :
+     * <p>
+     * {@code client.forEach(PartRevisionDTO.class, () -> partsApi.getPartRevisions(workspace, 0, max), consumer)}
+     * <p>
+     * The call must run a single api call on this client, in the calling thread. The consumer may call the
+     * api while the response is being read, but such calls do not count the pending response as done: with an
+     * {@code AdaptiveConcurrencyLimiter} at a limit of one, they wait for a permit until the queue wait expires.
+     *
+     * @param elementType : type of the list elements
+     * @param call        : the list call, its return value is ignored
+     * @param consumer    : receives the elements in order, in the calling thread
+     * @throws ApiException if the call fails or the response cannot be parsed
+     */
+    public <E> void forEach(Class<E> elementType, ApiCall<? extends List<E>> call, Consumer<? super E> consumer) throws ApiException {
+        sink.set(new ElementSink<>(elementType, consumer));
+        List<E> buffered;
+        try {
+            buffered = call.call();
+        } finally {
+            sink.remove();
+        }
+        if (buffered != null) {
+            // Response was not streamed
+            buffered.forEach(consumer);
+        }
+    }
+
+    /**
+     * Run a list call on any client, streaming its response if the client is a streaming one
+     *
+     * @see #forEach(Class, ApiCall, Consumer)
+     */
+    public static <E> void forEach(ApiClient client, Class<E> elementType, ApiCall<? extends List<E>> call,
+                                   Consumer<? super E> consumer) throws ApiException {
+        if (client instanceof StreamingApiClient) {
+            ((StreamingApiClient) client).forEach(elementType, call, consumer);
+        } else {
+            List<E> elements = call.call();
+            if (elements != null) {
+                elements.forEach(consumer);
+            }
+        }
+    }
+
+    /**
+     * Run a file download call, its request carrying the target headers and its response body being
+     * written by the target rather than to a temporary file
+     * <p>
+     * The call must run a single api call on this client, in the calling thread.
+     *
+     * @param target : receives the response body
+     * @param call   : the download call, typically a generated {@code downloadXxxFile} method
+     * @return the file written by the target
+     * @throws ApiException if the call fails or the target cannot write the body
+     */
+    public File download(DownloadTarget target, ApiCall<File> call) throws ApiException {
+        downloadTarget.set(target);
+        try {
+            return call.call();
+        } finally {
+            downloadTarget.remove();
+        }
+    }
+
+    // Date formats are shared by all the calls of the client and are not thread safe
+
+    @Override
+    public synchronized Date parseDate(String str) {
+        return super.parseDate(str);
+    }
+
+    @Override
+    public synchronized Date parseDatetime(String str) {
+        return super.parseDatetime(str);
+    }
+
+    @Override
+    public synchronized String formatDate(Date date) {
+        return super.formatDate(date);
+    }
+
+    @Override
+    public synchronized String formatDatetime(Date date) {
+        return super.formatDatetime(date);
+    }
+
+    @Override
+    public void processHeaderParams(Map<String, String> headerParams, Request.Builder reqBuilder) {
+        super.processHeaderParams(headerParams, reqBuilder);
+        DownloadTarget target = downloadTarget.get();
+        if (target != null) {
+            target.getRequestHeaders().forEach(reqBuilder::header);
+        }
+        // Called while the generated service builds the request, in the calling thread
+        ApiOperation operation = ApiOperation.fromCallStack();
+        if (operation != null) {
+            reqBuilder.tag(operation);
+        }
+    }
+
+    @Override
+    public File downloadFileFromResponse(Response response) throws ApiException {
+        DownloadTarget target = downloadTarget.get();
+        if (target == null) {
+            return super.downloadFileFromResponse(response);
+        }
+        downloadTarget.remove();
+        try {
+            return target.receive(response);
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    @Override
+    public <T> T handleResponse(Response response, Type returnType) throws ApiException {
+        if (response.isSuccessful() && (returnType == null || response.code() == 204) && response.body() != null) {
+            // The body of void operations is not read, closing it lets interceptors see the call completed
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                throw new ApiException(e);
+            }
+        }
+        return super.handleResponse(response, returnType);
+    }
+
+    @Override
+    public <T> T deserialize(Response response, Type returnType) throws ApiException {
+        ElementSink<?> target = sink.get();
+        if (target == null || response == null || response.body() == null
+                || !isJsonMime(response.header("Content-Type", "application/json"))) {
+            return super.deserialize(response, returnType);
+        }
+        // One shot: api calls made by the consumer are not streamed
+        sink.remove();
+        try {
+            if (response.body().contentLength() == 0) {
+                return null;
+            }
+            try (JsonReader reader = new JsonReader(response.body().charStream())) {
+                reader.setLenient(isLenientOnJson());
+                if (reader.peek() == JsonToken.NULL) {
+                    return null;
+                }
+                target.readArray(reader, getJSON().getGson());
+            }
+        } catch (IOException | JsonParseException e) {
+            throw new ApiException(e);
+        }
+        return null;
+    }
+
+    private static final class ElementSink<E> {
+
+        private final Class<E> elementType;
+        private final Consumer<? super E> consumer;
+
+        private ElementSink(Class<E> elementType, Consumer<? super E> consumer) {
+            this.elementType = elementType;
+            this.consumer = consumer;
+        }
+
+        private void readArray(JsonReader reader, Gson gson) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                E element = gson.fromJson(reader, elementType);
+                consumer.accept(element);
+            }
+            reader.endArray();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.async;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs blocking api calls with bounded concurrency and exposes their results
+ * as composable {@link CompletableFuture}, example :
+ * <pre>
+ *     AsyncApiExecutor async = AsyncApiExecutor.newVirtualThreadExecutor(32);
+ *     CompletableFuture&lt;PartRevisionDTO&gt; part = async.submit(() -&gt; partsApi.getPartRevision(workspace, number, "A"));
+ * </pre>
+ * A failed call completes its future exceptionally with the {@link com.docdoku.api.client.ApiException}.
+ * <p>
+ * Calls are run through the generated blocking methods : the generated *Async variants register
+ * a network interceptor on the shared http client for every call, and cannot be used to fan out.
+ */
+public class AsyncApiExecutor implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncApiExecutor.class.getName());
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    private AsyncApiExecutor(ExecutorService executor, Semaphore permits, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = permits;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Create an executor running at most maxConcurrency calls on a fixed pool of platform threads
+     *
+     * @param maxConcurrency : maximum number of calls running at the same time
+     * @return the executor
+     */
+    public static AsyncApiExecutor newFixedThreadExecutor(int maxConcurrency) {
+        checkConcurrency(maxConcurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrency, new DaemonThreadFactory());
+        return new AsyncApiExecutor(executor, null, maxConcurrency);
+    }
+
+    /**
+     * Create an executor running at most maxConcurrency calls, one virtual thread per call.
+     * <p>
+     * Falls back to {@link #newFixedThreadExecutor(int)} when virtual threads are not available (JDK &lt; 21)
+     *
+     * @param maxConcurrency : maximum number of calls running at the same time
+     * @return the executor
+     */
+    public static AsyncApiExecutor newVirtualThreadExecutor(int maxConcurrency) {
+        checkConcurrency(maxConcurrency);
+        ExecutorService executor = createVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            return newFixedThreadExecutor(maxConcurrency);
+        }
+        return new AsyncApiExecutor(executor, new Semaphore(maxConcurrency), maxConcurrency);
+    }
+
+    /**
+     * Check if virtual threads are available in the running JVM
+     *
+     * @return true if calls can run on virtual threads
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return getVirtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Submit a call
+     *
+     * @param call : the call to run
+     * @param <T>  : the call result type
+     * @return a future completed with the call result
+     */
+    public <T> CompletableFuture<T> submit(ApiCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> run(call, future));
+        return future;
+    }
+
+    /**
+     * Submit several calls
+     *
+     * @param calls : the calls to run
+     * @param <T>   : the calls result type
+     * @return a future completed with the results in calls order, or exceptionally with the first failure
+     */
+    public <T> CompletableFuture<List<T>> submitAll(List<? extends ApiCall<T>> calls) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(calls.size());
+        for (ApiCall<T> call : calls) {
+            futures.add(submit(call));
+        }
+        return allAsList(futures);
+    }
+
+    /**
+     * Combine futures into a future of their results
+     *
+     * @param futures : the futures to combine
+     * @param <T>     : the futures result type
+     * @return a future completed with the results in futures order, or exceptionally with the first failure
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(ignored -> {
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<T> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Stop accepting calls, and wait for the submitted ones to complete
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.FINE, "Waiting for api calls to complete");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void run(ApiCall<T> call, CompletableFuture<T> future) {
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+        try {
+            future.complete(call.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private static void checkConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency < 1: " + maxConcurrency);
+        }
+    }
+
+    private static Method getVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createVirtualThreadPerTaskExecutor() {
+        Method method = getVirtualThreadFactoryMethod();
+        if (method == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Cannot create virtual thread executor", e);
+            return null;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "docdoku-api-async-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.async;
+
+import com.docdoku.api.client.ApiException;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk fetch : the fetched values and the failures, both keyed by the requested keys
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BulkFetchResult<K, V> {
+
+    private final Map<K, V> values;
+    private final Map<K, ApiException> errors;
+
+    BulkFetchResult(Map<K, V> values, Map<K, ApiException> errors) {
+        this.values = Collections.unmodifiableMap(values);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return the fetched values, in the order of the requested keys
+     */
+    public Map<K, V> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the failures, in the order of the requested keys
+     */
+    public Map<K, ApiException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return true if every key was fetched
+     */
+    public boolean isComplete() {
+        return errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkFetchResult{values=" + values.size() + ", errors=" + errors.keySet() + "}";
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.async;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.services.PartsApi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class fetches many part revisions concurrently, example :
+ * <pre>
+ *     BulkFetchResult&lt;PartKey, PartRevisionDTO&gt; result = BulkPartFetcher.builder(client)
+ *             .maxConcurrency(16)
+ *             .build()
+ *             .fetch(keys);
+ *     result.getValues().forEach((key, part) -&gt; ...);
+ *     result.getErrors().forEach((key, error) -&gt; ...);
+ * </pre>
+ * Duplicated keys are fetched once. A failing key does not stop the others, its error is returned
+ * in the result.
+ */
+public class BulkPartFetcher {
+
+    private final ApiClient client;
+    private final int maxConcurrency;
+    private final AsyncApiExecutor executor;
+
+    private BulkPartFetcher(Builder builder) {
+        this.client = builder.client;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * Create a builder
+     *
+     * @param client : the client used to fetch the parts
+     * @return a new builder
+     */
+    public static Builder builder(ApiClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Fetch the part revisions of the given keys
+     *
+     * @param keys : the part revisions to fetch, duplicates are fetched once
+     * @return the fetched part revisions and the failures, in keys order
+     * @throws InterruptedException if interrupted while waiting for the calls to complete
+     */
+    public BulkFetchResult<PartKey, PartRevisionDTO> fetch(Collection<PartKey> keys) throws InterruptedException {
+        Set<PartKey> distinctKeys = new LinkedHashSet<>(keys);
+        if (distinctKeys.isEmpty()) {
+            return new BulkFetchResult<>(new LinkedHashMap<>(), new LinkedHashMap<>());
+        }
+        PartsApi partsApi = new PartsApi(client);
+        AsyncApiExecutor async = executor != null ? executor
+                : AsyncApiExecutor.newVirtualThreadExecutor(Math.min(maxConcurrency, distinctKeys.size()));
+        try {
+            List<CompletableFuture<PartRevisionDTO>> futures = new ArrayList<>(distinctKeys.size());
+            for (PartKey key : distinctKeys) {
+                futures.add(async.submit(() -> key.getVersion() != null
+                        ? partsApi.getPartRevision(key.getWorkspaceId(), key.getNumber(), key.getVersion())
+                        : partsApi.getLatestPartRevision(key.getWorkspaceId(), key.getNumber())));
+            }
+            Map<PartKey, PartRevisionDTO> values = new LinkedHashMap<>();
+            Map<PartKey, ApiException> errors = new LinkedHashMap<>();
+            int i = 0;
+            for (PartKey key : distinctKeys) {
+                try {
+                    values.put(key, futures.get(i++).get());
+                } catch (ExecutionException e) {
+                    errors.put(key, toApiException(e.getCause()));
+                }
+            }
+            return new BulkFetchResult<>(values, errors);
+        } finally {
+            if (async != executor) {
+                async.close();
+            }
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return executor != null ? executor.getMaxConcurrency() : maxConcurrency;
+    }
+
+    private static ApiException toApiException(Throwable t) {
+        return t instanceof ApiException ? (ApiException) t : new ApiException(t);
+    }
+
+    /**
+     * Identifies a part revision to fetch
+     */
+    public static final class PartKey {
+
+        private final String workspaceId;
+        private final String number;
+        private final String version;
+
+        /**
+         * @param workspaceId : the part workspace
+         * @param number      : the part number
+         * @param version     : the part version, null for the latest one
+         */
+        public PartKey(String workspaceId, String number, String version) {
+            this.workspaceId = Objects.requireNonNull(workspaceId, "workspaceId");
+            this.number = Objects.requireNonNull(number, "number");
+            this.version = version;
+        }
+
+        /**
+         * Key of the latest revision of a part
+         */
+        public static PartKey latest(String workspaceId, String number) {
+            return new PartKey(workspaceId, number, null);
+        }
+
+        public String getWorkspaceId() {
+            return workspaceId;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PartKey)) {
+                return false;
+            }
+            PartKey other = (PartKey) o;
+            return workspaceId.equals(other.workspaceId) && number.equals(other.number) && Objects.equals(version, other.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(workspaceId, number, version);
+        }
+
+        @Override
+        public String toString() {
+            return number + (version != null ? "-" + version : "") + " (" + workspaceId + ")";
+        }
+    }
+
+    /**
+     * Builder for a bulk part fetcher.
+     * <p>
+     * Defaults: at most 8 concurrent calls, on virtual threads when available.
+     */
+    public static class Builder {
+
+        private final ApiClient client;
+        private int maxConcurrency = 8;
+        private AsyncApiExecutor executor;
+
+        private Builder(ApiClient client) {
+            this.client = Objects.requireNonNull(client, "client");
+        }
+
+        /**
+         * Set the maximum number of part revisions fetched at the same time
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency < 1: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Run the calls on an existing executor, shared with other calls and left open after a fetch.
+         * Its concurrency then bounds the fetches instead of {@link #maxConcurrency(int)}
+         */
+        public Builder executor(AsyncApiExecutor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        public BulkPartFetcher build() {
+            return new BulkPartFetcher(this);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the number of concurrent requests with a limit adapted to the server health (AIMD).
+ * <p>
+ * The limit grows by one per limit-sized window of healthy responses, and is multiplied by the
+ * backoff ratio when a response is a 429 or a 503, when a request times out, or when its latency
+ * (time to response headers) exceeds the tolerance times the lowest latency recently observed for
+ * its api operation. The limit is decreased at most once per round trip: requests sent before the
+ * last decrease do not decrease it again.
+ * <p>
+ * Requests over the limit wait in a queue, 30 seconds at most by default. A request holds its permit
+ * until its response body is consumed or closed, so streamed downloads count as in flight. Responses
+ * without body content (HEAD requests, 204 and 304 statuses, empty bodies) release their permit as soon
+ * as received.
+ * <p>
+ * A call made while the same thread reads a response body, such as a call from a
+ * {@code StreamingApiClient.forEach} consumer, waits for a permit while holding one: once the limit
+ * is down to its minimum it fails with a queue timeout, or waits forever if the queue wait is not bounded.
+ */
+public class AdaptiveConcurrencyLimiter implements Interceptor {
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long maxQueueWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    // Guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queueDepth;
+    private final Map<String, Double> minLatencies = new HashMap<>();
+    private long lastDecrease = Long.MIN_VALUE;
+
+    private final AtomicLong decreaseCount = new AtomicLong();
+    private final AtomicLong queueTimeoutCount = new AtomicLong();
+
+    private AdaptiveConcurrencyLimiter(Builder builder) {
+        limit = builder.initialLimit;
+        minLimit = builder.minLimit;
+        maxLimit = builder.maxLimit;
+        backoffRatio = builder.backoffRatio;
+        latencyTolerance = builder.latencyTolerance;
+        maxQueueWait = builder.maxQueueWait;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the current concurrency limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of requests in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of requests waiting for a permit
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of times the limit was decreased
+     */
+    public long getDecreaseCount() {
+        return decreaseCount.get();
+    }
+
+    /**
+     * Get the number of requests failed because they waited too long for a permit
+     */
+    public long getQueueTimeoutCount() {
+        return queueTimeoutCount.get();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String operation = operation(request);
+        acquire();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            release(e instanceof SocketTimeoutException ? Sample.OVERLOAD : Sample.IGNORED, operation, start, 0);
+            throw e;
+        }
+        long latency = System.nanoTime() - start;
+        Sample sample = response.code() == 429 || response.code() == 503 ? Sample.OVERLOAD : Sample.LATENCY;
+        ResponseBody body = response.body();
+        if (body == null || isEmpty(request, response)) {
+            // Nothing will read the body, the generated client ignores it for void operations and 204
+            release(sample, operation, start, latency);
+            return response;
+        }
+        Permit permit = new Permit(sample, operation, start, latency);
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                try {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        permit.release();
+                    }
+                    return read;
+                } catch (IOException | RuntimeException e) {
+                    permit.release();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                permit.release();
+                super.close();
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private void acquire() throws IOException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxQueueWait);
+            queueDepth++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (maxQueueWait == 0) {
+                        permitReleased.await();
+                    } else if (remaining <= 0) {
+                        queueTimeoutCount.incrementAndGet();
+                        throw new IOException("Timed out waiting for a concurrency limiter permit, limit " + (int) limit);
+                    } else {
+                        remaining = permitReleased.awaitNanos(remaining);
+                    }
+                }
+            } finally {
+                queueDepth--;
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a concurrency limiter permit");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Sample sample, String operation, long start, long latency) {
+        lock.lock();
+        try {
+            inFlight--;
+            boolean overload = sample == Sample.OVERLOAD;
+            if (sample == Sample.LATENCY) {
+                // Lowest latency slowly drifts up so that it follows lasting changes
+                double minLatency = minLatencies.getOrDefault(operation, Double.MAX_VALUE);
+                minLatency = Math.min(latency, minLatency + (latency - minLatency) * 0.001);
+                minLatencies.put(operation, minLatency);
+                overload = latency > minLatency * latencyTolerance;
+            }
+            if (overload) {
+                // Requests sent before the last decrease were sent at the former limit
+                if (start > lastDecrease) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = System.nanoTime();
+                    decreaseCount.incrementAndGet();
+                }
+            } else if (sample == Sample.LATENCY) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Latencies are compared per api operation, untagged requests share a baseline per method
+     */
+    private static String operation(Request request) {
+        return request.tag() instanceof ApiOperation ? ApiOperation.of(request) : request.method();
+    }
+
+    private static boolean isEmpty(Request request, Response response) throws IOException {
+        return "HEAD".equals(request.method()) || response.code() == 204 || response.code() == 304
+                || response.body().contentLength() == 0;
+    }
+
+    private enum Sample {
+        LATENCY, OVERLOAD, IGNORED
+    }
+
+    private class Permit {
+
+        private final Sample sample;
+        private final String operation;
+        private final long start;
+        private final long latency;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Sample sample, String operation, long start, long latency) {
+            this.sample = sample;
+            this.operation = operation;
+            this.start = start;
+            this.latency = latency;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(sample, operation, start, latency);
+            }
+        }
+    }
+
+    /**
+     * Builder for a concurrency limiter.
+     * <p>
+     * Defaults: limit starting at 20 between 1 and 200, backoff ratio 0.75, latency tolerance 2,
+     * requests wait for a permit 30 seconds at most.
+     */
+    public static class Builder {
+
+        private double initialLimit = 20;
+        private double minLimit = 1;
+        private double maxLimit = 200;
+        private double backoffRatio = 0.75;
+        private double latencyTolerance = 2;
+        private long maxQueueWait = TimeUnit.SECONDS.toMillis(30);
+
+        private Builder() {
+        }
+
+        public Builder limits(int initial, int min, int max) {
+            if (min < 1 || initial < min || max < initial) {
+                throw new IllegalArgumentException("Invalid limits: " + initial + ", " + min + ", " + max);
+            }
+            this.initialLimit = initial;
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoffRatio not in ]0, 1[: " + backoffRatio);
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Latency, as a multiple of the lowest observed one, above which the server is deemed overloaded
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            if (latencyTolerance <= 1) {
+                throw new IllegalArgumentException("latencyTolerance <= 1: " + latencyTolerance);
+            }
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * Longest time a request waits for a permit, 0 means no limit: a call made while reading a response
+         * body in the same thread may then never get one
+         */
+        public Builder maxQueueWait(long wait, TimeUnit unit) {
+            if (wait < 0) {
+                throw new IllegalArgumentException("maxQueueWait < 0: " + wait);
+            }
+            this.maxQueueWait = unit.toMillis(wait);
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            return new AdaptiveConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.squareup.okhttp.Request;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Name of the api operation a request was built for, such as {@code PartBinaryApi.downloadPartFile}.
+ * <p>
+ * An operation stands for one method and path template of the api, whatever its path parameters, so
+ * interceptors can keep per endpoint state. Clients created by {@code DocDokuPLMClientFactory} tag
+ * the requests built by the generated services with their operation, found on the call stack from the
+ * {@code <operation>Call} method of the service: a service whose classes are renamed, by an obfuscator
+ * for instance, does not tag its requests.
+ */
+public final class ApiOperation {
+
+    private static final String SERVICES_PACKAGE = "com.docdoku.api.services.";
+    private static final String CALL_SUFFIX = "Call";
+    // The service method is a few frames above the request building, deeper frames are not looked at
+    private static final int MAX_FRAMES = 16;
+    private static final StackWalkerSearch STACK_WALKER = StackWalkerSearch.load();
+
+    private final String name;
+
+    private ApiOperation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Find the operation of the generated service method building a request in the current thread
+     *
+     * @return the operation, or null if the request is not built by a generated service
+     */
+    public static ApiOperation fromCallStack() {
+        if (STACK_WALKER != null) {
+            return STACK_WALKER.find();
+        }
+        // Java 8 : the whole stack trace is captured
+        StackTraceElement[] frames = new Throwable().getStackTrace();
+        for (int i = 0; i < frames.length && i < MAX_FRAMES; i++) {
+            ApiOperation operation = fromFrame(frames[i].getClassName(), frames[i].getMethodName());
+            if (operation != null) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the operation of the given name, to tag requests built by hand
+     */
+    public static ApiOperation named(String name) {
+        return new ApiOperation(name);
+    }
+
+    /**
+     * Get the operation name of a request. Requests not tagged with an operation are named after
+     * their method and path, numeric path segments being replaced by {@code {id}}.
+     */
+    public static String of(Request request) {
+        Object tag = request.tag();
+        if (tag instanceof ApiOperation) {
+            return ((ApiOperation) tag).name;
+        }
+        StringBuilder name = new StringBuilder(request.method()).append(' ');
+        for (String segment : request.httpUrl().encodedPathSegments()) {
+            name.append('/').append(isNumeric(segment) ? "{id}" : segment);
+        }
+        return name.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static ApiOperation fromFrame(String className, String methodName) {
+        if (className.startsWith(SERVICES_PACKAGE) && methodName.endsWith(CALL_SUFFIX)
+                && methodName.length() > CALL_SUFFIX.length()) {
+            return new ApiOperation(className.substring(SERVICES_PACKAGE.length()) + "."
+                    + methodName.substring(0, methodName.length() - CALL_SUFFIX.length()));
+        }
+        return null;
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Search of the call stack with {@code java.lang.StackWalker}, available with JDK 9+, which reads the
+     * frames lazily and stops at the service method. Driven by reflection as this library targets Java 8.
+     */
+    private static final class StackWalkerSearch {
+
+        private final Object walker;
+        private final Method walk;
+        private final Method getClassName;
+        private final Method getMethodName;
+
+        private StackWalkerSearch() throws ReflectiveOperationException {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            walker = walkerClass.getMethod("getInstance").invoke(null);
+            walk = walkerClass.getMethod("walk", Function.class);
+            getClassName = frameClass.getMethod("getClassName");
+            getMethodName = frameClass.getMethod("getMethodName");
+        }
+
+        private static StackWalkerSearch load() {
+            try {
+                return new StackWalkerSearch();
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        private ApiOperation find() {
+            Function<Stream<?>, ApiOperation> search = frames -> frames.limit(MAX_FRAMES)
+                    .map(this::fromFrame)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+            try {
+                return (ApiOperation) walk.invoke(walker, search);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot walk the call stack", e);
+            }
+        }
+
+        private ApiOperation fromFrame(Object frame) {
+            try {
+                return ApiOperation.fromFrame((String) getClassName.invoke(frame), (String) getMethodName.invoke(frame));
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot read a stack frame", e);
+            }
+        }
+    }
+}
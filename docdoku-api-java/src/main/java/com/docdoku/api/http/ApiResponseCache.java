@@ -0,0 +1,469 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.docdoku.api.client.ApiClient;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in client side cache for GET responses.
+ * <p>
+ * Responses are kept in a bounded in-memory LRU tier, and optionally in an on-disk tier backed by
+ * the OkHttp cache. Cache-Control and Expires response headers set the entries freshness; stale
+ * entries with an ETag or a Last-Modified header are revalidated with a conditional request and
+ * served again on a 304. Successful unsafe requests evict the entry of their url.
+ * <p>
+ * A cache holds the responses of one user: install it on a single client.
+ */
+public class ApiResponseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiResponseCache.class.getName());
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Cache diskCache;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private ApiResponseCache(Builder builder) {
+        maxEntries = builder.maxEntries;
+        maxBytes = builder.maxBytes;
+        maxEntryBytes = Math.min(builder.maxEntryBytes, builder.maxBytes);
+        diskCache = builder.directory != null ? new Cache(builder.directory, builder.maxDiskBytes) : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Install this cache on a client
+     *
+     * @param client : the client whose responses are cached
+     */
+    public void install(ApiClient client) {
+        client.getHttpClient().interceptors().add(getInterceptor());
+        if (diskCache != null) {
+            client.getHttpClient().setCache(diskCache);
+        }
+    }
+
+    /**
+     * Get the interceptor serving the in-memory tier, to add to a client application interceptors
+     */
+    public Interceptor getInterceptor() {
+        return this::intercept;
+    }
+
+    /**
+     * Get the on-disk tier
+     *
+     * @return the OkHttp cache, or null if this cache has no on-disk tier
+     */
+    public Cache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Get the number of GET requests which went through the in-memory tier
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Get the number of responses served from memory without network
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of responses served from memory after a 304 revalidation
+     */
+    public long getRevalidatedHitCount() {
+        return revalidatedHitCount.get();
+    }
+
+    /**
+     * Get the number of responses not found in memory or modified on the server
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of entries evicted from memory to respect the bounds
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Get the number of responses served by the on-disk tier, 0 if none
+     */
+    public long getDiskHitCount() {
+        return diskCache != null ? diskCache.getHitCount() : 0;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Remove the in-memory entry of an url
+     */
+    public synchronized void evict(String url) {
+        Entry removed = entries.remove(url);
+        if (removed != null) {
+            size -= removed.body.length;
+        }
+    }
+
+    /**
+     * Remove all entries, from both tiers
+     */
+    public void evictAll() throws IOException {
+        synchronized (this) {
+            entries.clear();
+            size = 0;
+        }
+        if (diskCache != null) {
+            diskCache.evictAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ApiResponseCache{requests=" + getRequestCount() + ", hits=" + getHitCount()
+                + ", revalidatedHits=" + getRevalidatedHitCount() + ", misses=" + getMissCount()
+                + ", diskHits=" + getDiskHitCount() + ", entries=" + getEntryCount() + ", size=" + getSize() + "}";
+    }
+
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        String url = request.urlString();
+
+        if (!"GET".equals(request.method())) {
+            Response response = chain.proceed(request);
+            if (response.isSuccessful() && !"HEAD".equals(request.method())) {
+                evict(url);
+            }
+            return response;
+        }
+
+        CacheControl requestCacheControl = request.cacheControl();
+        if (requestCacheControl.noStore()) {
+            return chain.proceed(request);
+        }
+
+        requestCount.incrementAndGet();
+        Entry entry = get(url);
+        if (entry != null && !entry.matches(request)) {
+            entry = null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry != null && !requestCacheControl.noCache() && now < entry.expiresAt) {
+            hitCount.incrementAndGet();
+            return entry.response(request);
+        }
+
+        Request networkRequest = request;
+        if (entry != null && entry.hasValidator()
+                && request.header("If-None-Match") == null && request.header("If-Modified-Since") == null) {
+            Request.Builder conditional = request.newBuilder();
+            if (entry.etag != null) {
+                conditional.header("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                conditional.header("If-Modified-Since", entry.lastModified);
+            }
+            networkRequest = conditional.build();
+        }
+
+        Response response = chain.proceed(networkRequest);
+
+        if (entry != null && networkRequest != request && response.code() == 304) {
+            response.body().close();
+            Entry revalidated = entry.revalidate(response.headers(), System.currentTimeMillis());
+            put(url, revalidated);
+            revalidatedHitCount.incrementAndGet();
+            return revalidated.response(request);
+        }
+
+        missCount.incrementAndGet();
+        if (!isCacheable(request, response)) {
+            if (entry != null) {
+                evict(url);
+            }
+            return response;
+        }
+        return store(url, request, response);
+    }
+
+    private boolean isCacheable(Request request, Response response) {
+        if (response.code() != 200) {
+            return false;
+        }
+        CacheControl cacheControl = response.cacheControl();
+        if (cacheControl.noStore() || request.cacheControl().noStore()) {
+            return false;
+        }
+        for (String vary : response.headers("Vary")) {
+            if (vary.contains("*")) {
+                return false;
+            }
+        }
+        return response.header("ETag") != null || response.header("Last-Modified") != null
+                || freshnessLifetime(response.headers(), cacheControl) > 0;
+    }
+
+    private Response store(String url, Request request, Response response) throws IOException {
+        ResponseBody body = response.body();
+        BufferedSource source = body.source();
+        if (source.request(maxEntryBytes + 1)) {
+            // Too large to be kept in memory, stream it unchanged
+            evict(url);
+            return response;
+        }
+        byte[] bytes = source.readByteArray();
+        body.close();
+
+        long now = System.currentTimeMillis();
+        Headers headers = response.headers();
+        Entry entry = new Entry(request, response, bytes, now + freshnessLifetime(headers, response.cacheControl()));
+        put(url, entry);
+        return entry.response(request);
+    }
+
+    private static long freshnessLifetime(Headers headers, CacheControl cacheControl) {
+        if (cacheControl.noCache()) {
+            return 0;
+        }
+        if (cacheControl.maxAgeSeconds() != -1) {
+            return cacheControl.maxAgeSeconds() * 1000L;
+        }
+        Date expires = headers.getDate("Expires");
+        if (expires != null) {
+            Date date = headers.getDate("Date");
+            long served = date != null ? date.getTime() : System.currentTimeMillis();
+            return Math.max(0, expires.getTime() - served);
+        }
+        return 0;
+    }
+
+    private synchronized Entry get(String url) {
+        return entries.get(url);
+    }
+
+    private synchronized void put(String url, Entry entry) {
+        Entry previous = entries.put(url, entry);
+        if (previous != null) {
+            size -= previous.body.length;
+        }
+        size += entry.body.length;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || size > maxBytes) && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.body.length;
+            evictionCount.incrementAndGet();
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Cached " + url + ", " + this);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Protocol protocol;
+        private final int code;
+        private final String message;
+        private final Headers headers;
+        private final MediaType mediaType;
+        private final byte[] body;
+        private final Map<String, String> varyValues;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAt;
+
+        private Entry(Request request, Response response, byte[] body, long expiresAt) {
+            this.protocol = response.protocol();
+            this.code = response.code();
+            this.message = response.message();
+            this.headers = response.headers();
+            this.mediaType = response.body().contentType();
+            this.body = body;
+            this.varyValues = new HashMap<>();
+            for (String vary : response.headers("Vary")) {
+                for (String name : vary.split(",")) {
+                    varyValues.put(name.trim(), request.header(name.trim()));
+                }
+            }
+            this.etag = response.header("ETag");
+            this.lastModified = response.header("Last-Modified");
+            this.expiresAt = expiresAt;
+        }
+
+        private Entry(Entry entry, Headers headers, long expiresAt) {
+            this.protocol = entry.protocol;
+            this.code = entry.code;
+            this.message = entry.message;
+            this.headers = headers;
+            this.mediaType = entry.mediaType;
+            this.body = entry.body;
+            this.varyValues = entry.varyValues;
+            this.etag = headers.get("ETag");
+            this.lastModified = headers.get("Last-Modified");
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean matches(Request request) {
+            for (Map.Entry<String, String> vary : varyValues.entrySet()) {
+                String value = request.header(vary.getKey());
+                if (value == null ? vary.getValue() != null : !value.equals(vary.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        private Entry revalidate(Headers notModified, long now) {
+            // Headers of the 304 update the stored ones
+            Headers.Builder merged = headers.newBuilder();
+            for (String name : notModified.names()) {
+                if (!"Content-Length".equalsIgnoreCase(name) && !"Content-Encoding".equalsIgnoreCase(name)) {
+                    merged.removeAll(name);
+                    for (String value : notModified.values(name)) {
+                        merged.add(name, value);
+                    }
+                }
+            }
+            Headers headers = merged.build();
+            return new Entry(this, headers, now + freshnessLifetime(headers, CacheControl.parse(headers)));
+        }
+
+        private Response response(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(code)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(mediaType, body))
+                    .build();
+        }
+    }
+
+    /**
+     * Builder for a response cache.
+     * <p>
+     * Defaults: 1000 in-memory entries, 16 MiB in memory, 1 MiB per entry, no on-disk tier.
+     */
+    public static class Builder {
+
+        private int maxEntries = 1000;
+        private long maxBytes = 16 * 1024 * 1024;
+        private long maxEntryBytes = 1024 * 1024;
+        private File directory;
+        private long maxDiskBytes;
+
+        private Builder() {
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries < 1: " + maxEntries);
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes < 0: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder maxEntryBytes(long maxEntryBytes) {
+            if (maxEntryBytes < 0) {
+                throw new IllegalArgumentException("maxEntryBytes < 0: " + maxEntryBytes);
+            }
+            this.maxEntryBytes = maxEntryBytes;
+            return this;
+        }
+
+        /**
+         * Enable the on-disk tier, the directory must not be used by another cache
+         */
+        public Builder directory(File directory, long maxDiskBytes) {
+            if (maxDiskBytes <= 0) {
+                throw new IllegalArgumentException("maxDiskBytes <= 0: " + maxDiskBytes);
+            }
+            this.directory = directory;
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public ApiResponseCache build() {
+            return new ApiResponseCache(this);
+        }
+    }
+}
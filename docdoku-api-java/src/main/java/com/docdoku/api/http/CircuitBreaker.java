@@ -0,0 +1,333 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * Fails fast the requests of an operation which keeps failing, so that a failing endpoint does not tie
+ * up threads and connections needed by the healthy ones.
+ * <p>
+ * Each operation (see {@link ApiOperation}) has its own circuit, requests not tagged with an operation
+ * share the {@link #UNTAGGED} circuit. A closed circuit records the outcome of
+ * the last requests and opens when their failure rate reaches the threshold. An open circuit rejects
+ * requests with a {@link CircuitBreakerOpenException} until the open duration has elapsed, then turns
+ * half-open and lets a few probe requests through: the circuit closes if they all succeed and opens
+ * again at the first failure. Connection errors and the 500, 502, 503 and 504 statuses are failures.
+ */
+public class CircuitBreaker implements Interceptor {
+
+    /**
+     * Name of the circuit shared by the requests not tagged with an operation
+     */
+    public static final String UNTAGGED = "untagged";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified of the state changes of the circuits, in the thread of the request causing them
+     */
+    public interface Listener {
+        void onStateChange(String operation, State from, State to);
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDuration;
+    private final int halfOpenProbes;
+    private final IntPredicate failureStatus;
+    private final Function<Request, String> operationName;
+    private final Listener listener;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private CircuitBreaker(Builder builder) {
+        windowSize = builder.windowSize;
+        minimumCalls = builder.minimumCalls;
+        failureRateThreshold = builder.failureRateThreshold;
+        openDuration = builder.openDuration;
+        halfOpenProbes = builder.halfOpenProbes;
+        failureStatus = builder.failureStatus;
+        operationName = builder.operationName;
+        listener = builder.listener;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the state of the circuit of an operation, closed if the operation was never called
+     */
+    public State getState(String operation) {
+        Circuit circuit = circuits.get(operation);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * Get the state of the circuits of all the called operations, sorted by operation
+     */
+    public Map<String, State> getStates() {
+        Map<String, State> states = new TreeMap<>();
+        circuits.forEach((operation, circuit) -> states.put(operation, circuit.getState()));
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Close all the circuits and forget their recorded outcomes
+     */
+    public void reset() {
+        circuits.values().forEach(Circuit::reset);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String operation = operationName.apply(request);
+        Circuit circuit = circuits.computeIfAbsent(operation, Circuit::new);
+        long generation = circuit.acquire();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            circuit.record(generation, false);
+            throw e;
+        }
+        circuit.record(generation, !failureStatus.test(response.code()));
+        return response;
+    }
+
+    private final class Circuit {
+
+        private final String operation;
+
+        // Guarded by this
+        private State state = State.CLOSED;
+        // Incremented on each state change, so that outcomes are recorded in the state their request started in
+        private long generation;
+        private final boolean[] outcomes = new boolean[windowSize];
+        private int recorded;
+        private int next;
+        private int failures;
+        private long openedAt;
+        private int probesStarted;
+        private int probesSucceeded;
+
+        private Circuit(String operation) {
+            this.operation = operation;
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        private long acquire() throws CircuitBreakerOpenException {
+            State from;
+            long started;
+            synchronized (this) {
+                from = state;
+                if (state == State.OPEN) {
+                    long elapsed = System.nanoTime() - openedAt;
+                    if (elapsed < openDuration) {
+                        throw new CircuitBreakerOpenException(operation, TimeUnit.NANOSECONDS.toMillis(openDuration - elapsed));
+                    }
+                    state = State.HALF_OPEN;
+                    generation++;
+                    probesStarted = 0;
+                    probesSucceeded = 0;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (probesStarted == halfOpenProbes) {
+                        throw new CircuitBreakerOpenException(operation, 0);
+                    }
+                    probesStarted++;
+                }
+                started = generation;
+            }
+            notifyChange(from, from == State.OPEN ? State.HALF_OPEN : from);
+            return started;
+        }
+
+        private void record(long started, boolean success) {
+            State from;
+            State to;
+            synchronized (this) {
+                from = state;
+                if (started != generation) {
+                    return;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (!success) {
+                        open();
+                    } else if (++probesSucceeded == halfOpenProbes) {
+                        close();
+                    }
+                } else if (state == State.CLOSED) {
+                    if (recorded == windowSize) {
+                        failures -= outcomes[next] ? 0 : 1;
+                    } else {
+                        recorded++;
+                    }
+                    outcomes[next] = success;
+                    failures += success ? 0 : 1;
+                    next = (next + 1) % windowSize;
+                    if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                        open();
+                    }
+                }
+                to = state;
+            }
+            notifyChange(from, to);
+        }
+
+        private void reset() {
+            State from;
+            synchronized (this) {
+                from = state;
+                close();
+            }
+            notifyChange(from, State.CLOSED);
+        }
+
+        private void open() {
+            state = State.OPEN;
+            generation++;
+            openedAt = System.nanoTime();
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            generation++;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+        }
+
+        private void notifyChange(State from, State to) {
+            if (from != to && listener != null) {
+                listener.onStateChange(operation, from, to);
+            }
+        }
+    }
+
+    /**
+     * Builder for a circuit breaker.
+     * <p>
+     * Defaults: circuits open when half of the last 20 requests failed, after at least 10 requests,
+     * stay open 30 seconds and close after one successful probe request.
+     */
+    public static class Builder {
+
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+        private double failureRateThreshold = 0.5;
+        private long openDuration = TimeUnit.SECONDS.toNanos(30);
+        private int halfOpenProbes = 1;
+        private IntPredicate failureStatus = code -> code == 500 || code == 502 || code == 503 || code == 504;
+        // Naming untagged requests after their path would create a circuit per path parameter value
+        private Function<Request, String> operationName = request ->
+                request.tag() instanceof ApiOperation ? ApiOperation.of(request) : UNTAGGED;
+        private Listener listener;
+
+        private Builder() {
+        }
+
+        /**
+         * Number of last outcomes the failure rate is computed on, and minimum number of outcomes to open
+         */
+        public Builder window(int windowSize, int minimumCalls) {
+            if (minimumCalls < 1 || windowSize < minimumCalls) {
+                throw new IllegalArgumentException("Invalid window: " + windowSize + ", " + minimumCalls);
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold not in ]0, 1]: " + failureRateThreshold);
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder openDuration(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("openDuration < 0: " + duration);
+            }
+            this.openDuration = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Number of successful probe requests needed to close a half-open circuit
+         */
+        public Builder halfOpenProbes(int halfOpenProbes) {
+            if (halfOpenProbes < 1) {
+                throw new IllegalArgumentException("halfOpenProbes < 1: " + halfOpenProbes);
+            }
+            this.halfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        /**
+         * Response statuses counted as failures, 500, 502, 503 and 504 by default
+         */
+        public Builder failureStatus(IntPredicate failureStatus) {
+            this.failureStatus = failureStatus;
+            return this;
+        }
+
+        /**
+         * Name of the circuit of a request, by default its {@link ApiOperation} or {@link #UNTAGGED}
+         * if it has none. The number of names must be bounded, a circuit being kept for each one.
+         */
+        public Builder operationName(Function<Request, String> operationName) {
+            this.operationName = operationName;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown without sending the request when the circuit of its operation is open.
+ * <p>
+ * Api calls fail with an {@code ApiException} caused by this exception.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final String operation;
+    private final long retryAfterMillis;
+
+    public CircuitBreakerOpenException(String operation, long retryAfterMillis) {
+        super("Circuit breaker open for " + operation + ", next attempt in " + retryAfterMillis + " ms");
+        this.operation = operation;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get the time left before the circuit lets a probe request through
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
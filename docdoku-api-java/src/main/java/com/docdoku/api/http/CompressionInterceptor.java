@@ -0,0 +1,178 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses large request bodies with gzip and makes sure gzip responses are decompressed.
+ * <p>
+ * Request compression is opt-in as the server must accept gzip encoded bodies: text bodies (JSON, XML,
+ * text) of known length above the threshold are sent with {@code Content-Encoding: gzip}. Binary bodies,
+ * such as uploaded files, are sent as is. OkHttp asks for and decompresses gzip responses unless the
+ * request sets its own Accept-Encoding header; responses still gzip encoded are decompressed here.
+ */
+public class CompressionInterceptor implements Interceptor {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+
+    private final boolean compressRequests;
+    private final long minRequestSize;
+
+    private final AtomicLong compressedRequestCount = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong decompressedResponseCount = new AtomicLong();
+
+    private CompressionInterceptor(Builder builder) {
+        compressRequests = builder.compressRequests;
+        minRequestSize = builder.minRequestSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long getCompressedRequestCount() {
+        return compressedRequestCount.get();
+    }
+
+    /**
+     * Get the size of the compressed request bodies before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * Get the size of the compressed request bodies after compression
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Get the number of gzip responses decompressed by this interceptor rather than by OkHttp
+     */
+    public long getDecompressedResponseCount() {
+        return decompressedResponseCount.get();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (compressRequests && shouldCompress(request)) {
+            request = compress(request);
+        }
+        Response response = chain.proceed(request);
+        if (!GZIP.equalsIgnoreCase(response.header(CONTENT_ENCODING)) || response.body() == null) {
+            return response;
+        }
+        decompressedResponseCount.incrementAndGet();
+        ResponseBody body = response.body();
+        BufferedSource source = Okio.buffer(new GzipSource(body.source()));
+        return response.newBuilder()
+                .removeHeader(CONTENT_ENCODING)
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(body.contentType(), -1, source))
+                .build();
+    }
+
+    private boolean shouldCompress(Request request) throws IOException {
+        RequestBody body = request.body();
+        return body != null
+                && request.header(CONTENT_ENCODING) == null
+                && isText(body.contentType())
+                && body.contentLength() >= minRequestSize;
+    }
+
+    private Request compress(Request request) throws IOException {
+        RequestBody body = request.body();
+        Buffer compressed = new Buffer();
+        try (BufferedSink gzip = Okio.buffer(new GzipSink(compressed))) {
+            body.writeTo(gzip);
+        }
+        compressedRequestCount.incrementAndGet();
+        uncompressedBytes.addAndGet(body.contentLength());
+        compressedBytes.addAndGet(compressed.size());
+        // Fully buffered so that the request keeps a known length and can be sent again
+        RequestBody gzipBody = RequestBody.create(body.contentType(), compressed.readByteString());
+        return request.newBuilder()
+                .header(CONTENT_ENCODING, GZIP)
+                .method(request.method(), gzipBody)
+                .build();
+    }
+
+    private static boolean isText(MediaType contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String subtype = contentType.subtype().toLowerCase();
+        // Form bodies are left out, servers seldom decode them when gzip encoded
+        return "text".equals(contentType.type()) || subtype.equals("json") || subtype.endsWith("+json")
+                || subtype.equals("xml") || subtype.endsWith("+xml");
+    }
+
+    /**
+     * Builder for a compression interceptor.
+     * <p>
+     * Defaults: request bodies are not compressed, once enabled the threshold is 8 KiB.
+     */
+    public static class Builder {
+
+        private boolean compressRequests;
+        private long minRequestSize = 8 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Compress the text request bodies of at least the given size, in bytes
+         */
+        public Builder compressRequests(long minRequestSize) {
+            if (minRequestSize < 0) {
+                throw new IllegalArgumentException("minRequestSize < 0: " + minRequestSize);
+            }
+            this.compressRequests = true;
+            this.minRequestSize = minRequestSize;
+            return this;
+        }
+
+        public CompressionInterceptor build() {
+            return new CompressionInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Snapshot of the metrics of one api operation, see {@link RequestMetrics}.
+ * Latencies are in milliseconds, from the request start to the end of its response body.
+ */
+public final class OperationMetrics {
+
+    private final String operation;
+    private final long requestCount;
+    private final long errorCount;
+    private final int inFlight;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final Map<Integer, Long> statusCounts;
+    private final double meanLatency;
+    private final double p50Latency;
+    private final double p90Latency;
+    private final double p99Latency;
+    private final double p999Latency;
+    private final double maxLatency;
+
+    OperationMetrics(String operation, long requestCount, long errorCount, int inFlight, long requestBytes,
+                     long responseBytes, Map<Integer, Long> statusCounts, LatencyHistogram latencies) {
+        this.operation = operation;
+        this.requestCount = requestCount;
+        this.errorCount = errorCount;
+        this.inFlight = inFlight;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.statusCounts = Collections.unmodifiableMap(new TreeMap<>(statusCounts));
+        meanLatency = latencies.getMean() / 1000;
+        p50Latency = latencies.getValueAtPercentile(50) / 1000.0;
+        p90Latency = latencies.getValueAtPercentile(90) / 1000.0;
+        p99Latency = latencies.getValueAtPercentile(99) / 1000.0;
+        p999Latency = latencies.getValueAtPercentile(99.9) / 1000.0;
+        maxLatency = latencies.getMax() / 1000.0;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get the number of completed requests, failed ones included
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Get the number of requests failed without a response, or while reading it
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of bytes of the request bodies whose length is known
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * Get the number of bytes read from the response bodies
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Get the number of responses by status code
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    public double getP50Latency() {
+        return p50Latency;
+    }
+
+    public double getP90Latency() {
+        return p90Latency;
+    }
+
+    public double getP99Latency() {
+        return p99Latency;
+    }
+
+    public double getP999Latency() {
+        return p999Latency;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d requests, %d errors, %d in flight, p50 %.1f ms, p99 %.1f ms, max %.1f ms, %d bytes sent, %d bytes received",
+                operation, requestCount, errorCount, inFlight, p50Latency, p99Latency, maxLatency, requestBytes, responseBytes);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.docdoku.api.client.ApiClient;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the phases of the calls of a client: lookup (DNS resolution and route selection), TCP connect,
+ * TLS handshake, time to first byte and transfer, and logs the calls slower than a threshold.
+ * <p>
+ * Slow calls are logged at WARNING level with their operation, path, workspace, sizes and phase timings.
+ * Request headers, including the Authorization header of JWT clients, are never logged.
+ * Phases are measured in the thread running the call, from the point the timer is installed in the client
+ * interceptors: install it last to exclude the time spent in retry backoff or concurrency limiter queue.
+ * Install it before the first call of the client, or give it to {@code DocDokuPLMClientFactory.Builder}
+ * so that the login of JWT clients is timed too.
+ */
+public class PhaseTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(PhaseTimer.class.getName());
+
+    private static final ThreadLocal<Timing> CURRENT = new ThreadLocal<>();
+
+    private final long slowCallThreshold;
+    private final Consumer<PhaseTimings> listener;
+
+    private PhaseTimer(Builder builder) {
+        slowCallThreshold = builder.slowCallThreshold;
+        listener = builder.listener;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Time the calls of a client
+     *
+     * @param client : the client whose calls are timed
+     * @see #install(OkHttpClient)
+     */
+    public void install(ApiClient client) {
+        install(client.getHttpClient());
+    }
+
+    /**
+     * Time the calls of an http client. Pooled TLS connections are only reused by clients with the same
+     * socket factories: connections the client opened before being timed are not reused, so install the
+     * timer before the first call of the client.
+     *
+     * @param httpClient : the client whose calls are timed
+     */
+    public void install(OkHttpClient httpClient) {
+        httpClient.interceptors().add(this::intercept);
+        httpClient.networkInterceptors().add(PhaseTimer::interceptNetwork);
+        SocketFactory socketFactory = httpClient.getSocketFactory();
+        if (socketFactory == null || socketFactory == SocketFactory.getDefault()) {
+            // Custom socket factories are kept, connections are then not timed
+            httpClient.setSocketFactory(TimedSocketFactory.INSTANCE);
+        }
+        SSLSocketFactory sslSocketFactory = httpClient.getSslSocketFactory();
+        if (sslSocketFactory == null) {
+            httpClient.setSslSocketFactory(TimedSSLSocketFactory.DEFAULT);
+        } else if (!(sslSocketFactory instanceof TimedSSLSocketFactory)) {
+            httpClient.setSslSocketFactory(new TimedSSLSocketFactory(sslSocketFactory));
+        }
+    }
+
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        Timing timing = new Timing(request);
+        Timing outer = CURRENT.get();
+        CURRENT.set(timing);
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            timing.complete(-1);
+            throw e;
+        } finally {
+            CURRENT.set(outer);
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            timing.complete(response.code());
+            return response;
+        }
+        int code = response.code();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read;
+                try {
+                    read = super.read(sink, byteCount);
+                } catch (IOException | RuntimeException e) {
+                    timing.complete(-1);
+                    throw e;
+                }
+                if (read == -1) {
+                    timing.complete(code);
+                } else {
+                    timing.responseBytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                timing.complete(code);
+                super.close();
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private static Response interceptNetwork(Interceptor.Chain chain) throws IOException {
+        Timing timing = CURRENT.get();
+        if (timing == null) {
+            return chain.proceed(chain.request());
+        }
+        if (timing.connectionReady == 0) {
+            timing.connectionReady = System.nanoTime();
+        }
+        Response response = chain.proceed(chain.request());
+        timing.headersReceived = System.nanoTime();
+        return response;
+    }
+
+    private final class Timing {
+
+        private final Request request;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        // Written by the thread running the call, read once completed
+        private volatile long connectStart;
+        private volatile long connectEnd;
+        private volatile long tlsStart;
+        private volatile long connectionReady;
+        private volatile long headersReceived;
+        private volatile long responseBytes;
+
+        private Timing(Request request) {
+            this.request = request;
+        }
+
+        private void complete(int status) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            long end = System.nanoTime();
+            boolean reused = connectStart == 0;
+            long ready = connectionReady == 0 ? end : connectionReady;
+            long headers = headersReceived == 0 ? end : headersReceived;
+            long requestBytes;
+            try {
+                requestBytes = request.body() == null ? 0 : Math.max(0, request.body().contentLength());
+            } catch (IOException e) {
+                requestBytes = 0;
+            }
+            PhaseTimings timings = new PhaseTimings(ApiOperation.of(request), request.method(),
+                    request.httpUrl().encodedPath(), workspace(request), status, reused, requestBytes, responseBytes,
+                    reused ? 0 : millis(start, connectStart),
+                    reused ? 0 : millis(connectStart, connectEnd),
+                    tlsStart == 0 ? 0 : millis(tlsStart, ready),
+                    millis(ready, headers), millis(headers, end), millis(start, end));
+            if (listener != null) {
+                listener.accept(timings);
+            }
+            if (end - start >= slowCallThreshold && LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Slow call " + timings);
+            }
+        }
+    }
+
+    private static double millis(long from, long to) {
+        return to < from ? 0 : (to - from) / 1e6;
+    }
+
+    private static String workspace(Request request) {
+        List<String> segments = request.httpUrl().pathSegments();
+        int index = segments.indexOf("workspaces");
+        return index == -1 || index + 1 == segments.size() ? null : segments.get(index + 1);
+    }
+
+    private static final class TimedSocket extends Socket {
+
+        @Override
+        public void connect(SocketAddress endpoint, int timeout) throws IOException {
+            Timing timing = CURRENT.get();
+            if (timing != null) {
+                timing.connectStart = System.nanoTime();
+            }
+            super.connect(endpoint, timeout);
+            if (timing != null) {
+                timing.connectEnd = System.nanoTime();
+            }
+        }
+    }
+
+    private static final class TimedSocketFactory extends SocketFactory {
+
+        private static final TimedSocketFactory INSTANCE = new TimedSocketFactory();
+
+        private final SocketFactory delegate = SocketFactory.getDefault();
+
+        @Override
+        public Socket createSocket() {
+            return new TimedSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+
+    private static final class TimedSSLSocketFactory extends SSLSocketFactory {
+
+        // The default factory is created on each call, a single instance is wrapped
+        private static final TimedSSLSocketFactory DEFAULT = new TimedSSLSocketFactory((SSLSocketFactory) SSLSocketFactory.getDefault());
+
+        private final SSLSocketFactory delegate;
+
+        private TimedSSLSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        // Connections are pooled by address, which includes the ssl socket factory: timed clients share them
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TimedSSLSocketFactory && delegate.equals(((TimedSSLSocketFactory) o).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            // The handshake follows, up to the connection being ready
+            Timing timing = CURRENT.get();
+            if (timing != null) {
+                timing.tlsStart = System.nanoTime();
+            }
+            return delegate.createSocket(socket, host, port, autoClose);
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+
+    /**
+     * Builder for a phase timer.
+     * <p>
+     * Defaults: calls slower than 5 seconds are logged, no listener.
+     */
+    public static class Builder {
+
+        private long slowCallThreshold = TimeUnit.SECONDS.toNanos(5);
+        private Consumer<PhaseTimings> listener;
+
+        private Builder() {
+        }
+
+        public Builder slowCallThreshold(long threshold, TimeUnit unit) {
+            if (threshold < 0) {
+                throw new IllegalArgumentException("slowCallThreshold < 0: " + threshold);
+            }
+            this.slowCallThreshold = unit.toNanos(threshold);
+            return this;
+        }
+
+        /**
+         * Receive the timings of every call, in the thread completing the call
+         */
+        public Builder listener(Consumer<PhaseTimings> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public PhaseTimer build() {
+            return new PhaseTimer(this);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+/**
+ * Time spent by one request in each phase of its call, see {@link PhaseTimer}. Durations are in milliseconds.
+ * <p>
+ * Lookup runs from the start of the call to the start of the TCP connect: mostly DNS resolution, but also the
+ * connection pool lookup and the proxy and route selection, which the http client does not time separately.
+ * Lookup, connect and TLS durations are 0 when the request reuses a pooled connection. Time to first byte runs
+ * from the connection being ready to the response headers: it covers sending the request and the server
+ * processing time. Transfer runs from the response headers to the end of the response body.
+ */
+public final class PhaseTimings {
+
+    private final String operation;
+    private final String method;
+    private final String path;
+    private final String workspace;
+    private final int status;
+    private final boolean connectionReused;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final double lookup;
+    private final double connect;
+    private final double tls;
+    private final double timeToFirstByte;
+    private final double transfer;
+    private final double total;
+
+    PhaseTimings(String operation, String method, String path, String workspace, int status, boolean connectionReused,
+                 long requestBytes, long responseBytes, double lookup, double connect, double tls,
+                 double timeToFirstByte, double transfer, double total) {
+        this.operation = operation;
+        this.method = method;
+        this.path = path;
+        this.workspace = workspace;
+        this.status = status;
+        this.connectionReused = connectionReused;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.lookup = lookup;
+        this.connect = connect;
+        this.tls = tls;
+        this.timeToFirstByte = timeToFirstByte;
+        this.transfer = transfer;
+        this.total = total;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the url path of the request, without its query
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get the workspace targeted by the request, or null if its path holds none
+     */
+    public String getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Get the response status code, or -1 if the call failed
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Get the time to resolve the host and select the route of a new connection
+     */
+    public double getLookup() {
+        return lookup;
+    }
+
+    public double getConnect() {
+        return connect;
+    }
+
+    public double getTls() {
+        return tls;
+    }
+
+    public double getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public double getTransfer() {
+        return transfer;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s%s %s: total %.1f ms (lookup %.1f, connect %.1f, tls %.1f, ttfb %.1f, transfer %.1f), %d bytes sent, %d bytes received, %s connection",
+                operation, method, path, workspace == null ? "" : " [" + workspace + "]", status == -1 ? "failed" : String.valueOf(status),
+                total, lookup, connect, tls, timeToFirstByte, transfer, requestBytes, responseBytes, connectionReused ? "reused" : "new");
+    }
+}
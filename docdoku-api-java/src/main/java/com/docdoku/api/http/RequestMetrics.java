@@ -0,0 +1,225 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Records per operation metrics of the requests: latency histogram, request and response bytes,
+ * status codes, errors and requests in flight.
+ * <p>
+ * A request is in flight, and its latency runs, until its response body is consumed or closed. Responses
+ * without body content (HEAD requests, 204 and 304 statuses, empty bodies) complete when received.
+ * Operations are named by {@link ApiOperation#of(Request)}, such as {@code PartsApi.getPartRevision},
+ * requests not tagged with an operation are recorded together under {@link #UNTAGGED}. Read the metrics with {@link #snapshot()} or export them with {@link #toJson()}.
+ */
+public class RequestMetrics implements Interceptor {
+
+    /**
+     * Name of the operation of the requests not tagged with an operation
+     */
+    public static final String UNTAGGED = "untagged";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Function<Request, String> operationName;
+    private final ConcurrentMap<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    public RequestMetrics() {
+        // Naming untagged requests after their path would record an histogram per path parameter value
+        this(request -> request.tag() instanceof ApiOperation ? ApiOperation.of(request) : UNTAGGED);
+    }
+
+    /**
+     * @param operationName : name of the operation of a request, metrics are recorded by operation.
+     *                      The number of names must be bounded, a histogram being kept for each one.
+     */
+    public RequestMetrics(Function<Request, String> operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * Get the metrics of all the called operations, sorted by operation
+     */
+    public Map<String, OperationMetrics> snapshot() {
+        Map<String, OperationMetrics> snapshot = new TreeMap<>();
+        recorders.forEach((operation, recorder) -> snapshot.put(operation, recorder.snapshot(operation)));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Get the metrics of an operation, or null if it was never called
+     */
+    public OperationMetrics getOperationMetrics(String operation) {
+        Recorder recorder = recorders.get(operation);
+        return recorder == null ? null : recorder.snapshot(operation);
+    }
+
+    /**
+     * Forget all recorded metrics. Requests in flight are still counted when they complete.
+     */
+    public void reset() {
+        recorders.clear();
+    }
+
+    /**
+     * Export a snapshot of the metrics as a JSON object, with a timestamp and the metrics by operation
+     */
+    public String toJson() {
+        return GSON.toJson(toJsonObject());
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        GSON.toJson(toJsonObject(), writer);
+        writer.flush();
+    }
+
+    private JsonObject toJsonObject() {
+        JsonObject json = new JsonObject();
+        json.addProperty("timestamp", System.currentTimeMillis());
+        json.add("operations", GSON.toJsonTree(snapshot()));
+        return json;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Recorder recorder = recorders.computeIfAbsent(operationName.apply(request), operation -> new Recorder());
+        long requestBytes = request.body() == null ? 0 : Math.max(0, request.body().contentLength());
+        Call call = new Call(recorder, requestBytes);
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            call.complete(-1);
+            throw e;
+        }
+        ResponseBody body = response.body();
+        if (body == null || isEmpty(request, response)) {
+            // Nothing will read the body, the generated client ignores it for void operations and 204
+            call.complete(response.code());
+            return response;
+        }
+        int code = response.code();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read;
+                try {
+                    read = super.read(sink, byteCount);
+                } catch (IOException | RuntimeException e) {
+                    call.complete(-1);
+                    throw e;
+                }
+                if (read == -1) {
+                    call.complete(code);
+                } else {
+                    call.recorder.responseBytes.add(read);
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                call.complete(code);
+                super.close();
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private static boolean isEmpty(Request request, Response response) throws IOException {
+        return "HEAD".equals(request.method()) || response.code() == 204 || response.code() == 304
+                || response.body().contentLength() == 0;
+    }
+
+    private static final class Call {
+
+        private final Recorder recorder;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Call(Recorder recorder, long requestBytes) {
+            this.recorder = recorder;
+            recorder.inFlight.incrementAndGet();
+            recorder.requestBytes.add(requestBytes);
+        }
+
+        /**
+         * @param code : response status code, or -1 for an error
+         */
+        private void complete(int code) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            recorder.inFlight.decrementAndGet();
+            recorder.requestCount.increment();
+            recorder.latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (code == -1) {
+                recorder.errorCount.increment();
+            } else {
+                recorder.statusCounts.computeIfAbsent(code, c -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    private static final class Recorder {
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+
+        private OperationMetrics snapshot(String operation) {
+            Map<Integer, Long> statuses = new TreeMap<>();
+            statusCounts.forEach((code, count) -> statuses.put(code, count.sum()));
+            return new OperationMetrics(operation, requestCount.sum(), errorCount.sum(), inFlight.get(),
+                    requestBytes.sum(), responseBytes.sum(), statuses, latencies);
+        }
+    }
+}
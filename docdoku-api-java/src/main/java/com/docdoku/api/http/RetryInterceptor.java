@@ -0,0 +1,293 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.http;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retries requests failing with a transient error: an IOException or a 429, 502, 503 or 504 status.
+ * <p>
+ * Once sent, only idempotent requests are retried: by default GET, HEAD and OPTIONS requests, and the api
+ * operations declared with {@link Builder#idempotentOperations}. Writes such as check in, check out or
+ * iteration updates are not idempotent from the client side. Other requests are retried only when the
+ * connection could not be established, so the server never saw them.
+ * Retries wait for a jittered exponential backoff, or for the Retry-After delay sent by the server.
+ * A retry budget, refilled by successful requests, keeps retries from amplifying an outage.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final Logger LOGGER = Logger.getLogger(RetryInterceptor.class.getName());
+
+    private static final Set<String> SAFE_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS"));
+    private static final Set<Integer> RETRYABLE_STATUS = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+
+    // Budget is counted in thousandths of a retry
+    private static final long TOKEN = 1000;
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long maxRetryAfter;
+    private final long maxBudget;
+    private final long budgetRefill;
+    private final Predicate<Request> idempotent;
+
+    private final AtomicLong budget;
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+    private RetryInterceptor(Builder builder) {
+        maxRetries = builder.maxRetries;
+        initialBackoff = builder.initialBackoff;
+        maxBackoff = builder.maxBackoff;
+        maxRetryAfter = builder.maxRetryAfter;
+        maxBudget = builder.budget * TOKEN;
+        budgetRefill = Math.round(builder.budgetRatio * TOKEN);
+        idempotent = builder.idempotent;
+        budget = new AtomicLong(maxBudget);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the number of retries performed
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Get the number of retries given up because the budget was exhausted
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.get();
+    }
+
+    /**
+     * Get the number of retries currently allowed by the budget
+     */
+    public double getAvailableBudget() {
+        return (double) budget.get() / TOKEN;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean canRetryAfterSend = idempotent.test(request);
+
+        for (int attempt = 0; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                boolean retryable = canRetryAfterSend || e instanceof ConnectException;
+                if (!retryable || attempt >= maxRetries || !acquireRetry()) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Retrying " + request.method() + " " + request.urlString() + " after " + e);
+                sleep(backoff(attempt));
+                continue;
+            }
+
+            if (!RETRYABLE_STATUS.contains(response.code()) || !canRetryAfterSend || attempt >= maxRetries) {
+                if (response.isSuccessful()) {
+                    refillBudget();
+                }
+                return response;
+            }
+            long delay = retryAfter(response);
+            if (delay < 0) {
+                delay = backoff(attempt);
+            } else if (delay > maxRetryAfter) {
+                return response;
+            }
+            if (!acquireRetry()) {
+                return response;
+            }
+            LOGGER.log(Level.FINE, "Retrying " + request.method() + " " + request.urlString() + " after status " + response.code());
+            response.body().close();
+            sleep(delay);
+        }
+    }
+
+    private boolean acquireRetry() {
+        while (true) {
+            long available = budget.get();
+            if (available < TOKEN) {
+                budgetExhaustedCount.incrementAndGet();
+                return false;
+            }
+            if (budget.compareAndSet(available, available - TOKEN)) {
+                retryCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void refillBudget() {
+        while (true) {
+            long available = budget.get();
+            if (available >= maxBudget || budget.compareAndSet(available, Math.min(maxBudget, available + budgetRefill))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff
+     */
+    private long backoff(int attempt) {
+        long ceiling = initialBackoff << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxBackoff) {
+            ceiling = maxBackoff;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return the Retry-After delay in milliseconds, -1 if none
+     */
+    private static long retryAfter(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Builder for a retry interceptor.
+     * <p>
+     * Defaults: 3 retries, backoff from 200 ms up to 10 s, Retry-After honoured up to 30 s,
+     * budget of 10 retries refilled by 0.1 retry per successful request, GET, HEAD and OPTIONS
+     * requests retried once sent.
+     */
+    public static class Builder {
+
+        private int maxRetries = 3;
+        private long initialBackoff = 200;
+        private long maxBackoff = TimeUnit.SECONDS.toMillis(10);
+        private long maxRetryAfter = TimeUnit.SECONDS.toMillis(30);
+        private long budget = 10;
+        private double budgetRatio = 0.1;
+        private final Set<String> idempotentOperations = new HashSet<>();
+        private Predicate<Request> idempotent = request -> SAFE_METHODS.contains(request.method())
+                || request.tag() instanceof ApiOperation && idempotentOperations.contains(ApiOperation.of(request));
+
+        private Builder() {
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 1 || max < initial) {
+                throw new IllegalArgumentException("Invalid backoff: " + initial + ", " + max);
+            }
+            this.initialBackoff = unit.toMillis(initial);
+            this.maxBackoff = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Longest Retry-After delay to wait for, longer ones are not retried
+         */
+        public Builder maxRetryAfter(long delay, TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("maxRetryAfter < 0: " + delay);
+            }
+            this.maxRetryAfter = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * @param budget : maximum number of retries available at once
+         * @param ratio  : retries earned by each successful request
+         */
+        public Builder budget(long budget, double ratio) {
+            if (budget < 0 || ratio < 0) {
+                throw new IllegalArgumentException("Invalid budget: " + budget + ", " + ratio);
+            }
+            this.budget = budget;
+            this.budgetRatio = ratio;
+            return this;
+        }
+
+        /**
+         * Declare api operations (such as {@code AccountsApi.updateAccount}) which can safely be sent again
+         * after reaching the server, in addition to the GET, HEAD and OPTIONS requests
+         */
+        public Builder idempotentOperations(String... operations) {
+            idempotentOperations.addAll(Arrays.asList(operations));
+            return this;
+        }
+
+        /**
+         * Classify the requests which can safely be sent again after reaching the server, replacing the
+         * default classification
+         */
+        public Builder idempotent(Predicate<Request> idempotent) {
+            this.idempotent = idempotent;
+            return this;
+        }
+
+        public RetryInterceptor build() {
+            return new RetryInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.paging;
+
+import com.docdoku.api.client.ApiException;
+
+import java.util.List;
+
+/**
+ * Fetch one page of a paginated endpoint, example :
+ * <p>
+ * {@code (start, max) -> partsApi.getPartRevisions(workspace, start, max)}
+ *
+ * @param <T> the element type
+ */
+@FunctionalInterface
+public interface PageFetcher<T> {
+
+    /**
+     * @param start : offset of the first element
+     * @param max   : maximum number of elements
+     * @return the page, shorter than max if it is the last one
+     * @throws ApiException if the call fails
+     */
+    List<T> fetch(int start, int max) throws ApiException;
+}
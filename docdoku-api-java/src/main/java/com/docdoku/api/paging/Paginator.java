@@ -0,0 +1,261 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.paging;
+
+import com.docdoku.api.client.ApiException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over a paginated endpoint.
+ * <p>
+ * Pages are fetched on demand, and the next page is fetched in the background while the current one
+ * is consumed. At most two pages are held in memory whatever the number of results.
+ * Each iteration starts again from the first page. Api failures are thrown as {@link UncheckedApiException}.
+ *
+ * @param <T> the element type
+ */
+public class Paginator<T> implements Iterable<T> {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "docdoku-api-paginator-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final int pageSize;
+    private final int limit;
+    private final boolean prefetch;
+    private final Executor executor;
+
+    private Paginator(Builder<T> builder) {
+        fetcher = builder.fetcher;
+        start = builder.start;
+        pageSize = builder.pageSize;
+        limit = builder.limit;
+        prefetch = builder.prefetch;
+        executor = builder.executor != null ? builder.executor : PREFETCH_EXECUTOR;
+    }
+
+    /**
+     * Get a builder for a paginator over the given endpoint
+     */
+    public static <T> Builder<T> builder(PageFetcher<T> fetcher) {
+        return new Builder<>(fetcher);
+    }
+
+    /**
+     * Get a paginator over all the results of the given endpoint, with default page size
+     */
+    public static <T> Paginator<T> of(PageFetcher<T> fetcher) {
+        return builder(fetcher).build();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Get a sequential stream over the results
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private class PageIterator implements Iterator<T> {
+
+        private int offset = start;
+        private int remaining = limit;
+        private boolean exhausted;
+        private Iterator<T> current = Collections.emptyIterator();
+        private Page pending;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (pending == null) {
+                    if (exhausted) {
+                        return false;
+                    }
+                    pending = book(false);
+                }
+                Page page = pending;
+                pending = null;
+                List<T> items = page.await();
+                if (items.size() < page.max) {
+                    exhausted = true;
+                } else if (!exhausted && prefetch) {
+                    pending = book(true);
+                }
+                current = items.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * Book the next page range and fetch it, in the background if async
+         */
+        private Page book(boolean async) {
+            int pageStart = offset;
+            int max = remaining > 0 ? Math.min(pageSize, remaining) : pageSize;
+            offset += max;
+            if (remaining > 0) {
+                remaining -= max;
+                exhausted = remaining == 0;
+            }
+            CompletableFuture<List<T>> future = new CompletableFuture<>();
+            Runnable fetch = () -> {
+                try {
+                    future.complete(fetcher.fetch(pageStart, max));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            };
+            if (async) {
+                executor.execute(fetch);
+            } else {
+                fetch.run();
+            }
+            return new Page(max, future);
+        }
+    }
+
+    private class Page {
+
+        private final int max;
+        private final CompletableFuture<List<T>> future;
+
+        private Page(int max, CompletableFuture<List<T>> future) {
+            this.max = max;
+            this.future = future;
+        }
+
+        private List<T> await() {
+            try {
+                List<T> items = future.join();
+                return items != null ? items : Collections.<T>emptyList();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ApiException) {
+                    throw new UncheckedApiException((ApiException) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Builder for a paginator.
+     * <p>
+     * Defaults: start at 0, pages of 100 elements, no limit, prefetch enabled on a shared daemon thread pool.
+     */
+    public static class Builder<T> {
+
+        private final PageFetcher<T> fetcher;
+        private int start;
+        private int pageSize = 100;
+        private int limit;
+        private boolean prefetch = true;
+        private Executor executor;
+
+        private Builder(PageFetcher<T> fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        public Builder<T> start(int start) {
+            if (start < 0) {
+                throw new IllegalArgumentException("start < 0: " + start);
+            }
+            this.start = start;
+            return this;
+        }
+
+        public Builder<T> pageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("pageSize < 1: " + pageSize);
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Limit the total number of results, 0 means no limit
+         */
+        public Builder<T> limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit < 0: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder<T> prefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * Executor fetching the next pages in the background
+         */
+        public Builder<T> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Paginator<T> build() {
+            return new Paginator<>(this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.paging;
+
+import com.docdoku.api.client.ApiException;
+
+/**
+ * Wraps an ApiException thrown where checked exceptions are not allowed, such as in iterators
+ */
+public class UncheckedApiException extends RuntimeException {
+
+    public UncheckedApiException(ApiException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized ApiException getCause() {
+        return (ApiException) super.getCause();
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.structure;
+
+import com.docdoku.api.models.ComponentDTO;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable graph of the parts of a product structure, built once from the {@link ComponentDTO} tree
+ * returned by {@link com.docdoku.api.services.ProductsApi#filterProductStructure}, example :
+ * <pre>
+ *     ComponentDTO root = productsApi.filterProductStructure(workspace, ciId, "latest", null, -1, null, false);
+ *     ProductStructureGraph graph = ProductStructureGraph.of(root);
+ *     double[] quantities = graph.getTotalQuantities();
+ *     for (int id = 0; id &lt; graph.size(); id++) {
+ *         System.out.println(graph.getNumber(id) + " x " + quantities[id]);
+ *     }
+ * </pre>
+ * Each distinct part number is a node, identified by an int id from 0 to {@link #size()} - 1, the root being 0.
+ * A part used in many places of the tree is stored once : links between parts are kept in primitive arrays,
+ * indexed by parent (children) and by child (parents), so that a structure of hundreds of thousands of
+ * occurrences takes a few arrays of the size of its distinct links.
+ * <p>
+ * Instances can be cached and shared between threads.
+ */
+public class ProductStructureGraph {
+
+    /**
+     * Callback of {@link #visitOccurrences(OccurrenceVisitor)}
+     */
+    @FunctionalInterface
+    public interface OccurrenceVisitor {
+
+        /**
+         * @param id       : the part of the occurrence
+         * @param depth    : the depth of the occurrence, 0 for the root
+         * @param quantity : the quantity of the occurrence in the root, product of the link amounts on its path
+         * @return true to visit the components of the occurrence, false to skip them
+         */
+        boolean visit(int id, int depth, double quantity);
+    }
+
+    private static final double DEFAULT_AMOUNT = 1;
+
+    private final String[] numbers;
+    private final String[] versions;
+    private final int[] iterations;
+    private final Map<String, Integer> ids;
+
+    // Links by parent : children of part i are children[childOffsets[i] .. childOffsets[i + 1] - 1]
+    private final int[] childOffsets;
+    private final int[] children;
+    private final double[] amounts;
+
+    // Links by child : links using part i are parentLinks[parentOffsets[i] .. parentOffsets[i + 1] - 1]
+    private final int[] parentOffsets;
+    private final int[] parentLinks;
+    private final int[] linkParents;
+
+    // Parts ordered parents first
+    private final int[] topologicalOrder;
+
+    private ProductStructureGraph(Builder builder) {
+        int size = builder.numbers.size();
+        numbers = builder.numbers.toArray(new String[size]);
+        versions = builder.versions.toArray(new String[size]);
+        iterations = Arrays.copyOf(builder.iterations, size);
+        ids = Collections.unmodifiableMap(builder.ids);
+
+        int linkCount = builder.linkCount;
+        childOffsets = new int[size + 1];
+        children = new int[linkCount];
+        amounts = new double[linkCount];
+        linkParents = new int[linkCount];
+        // Links of a parent are added together, in the order of its components
+        int[] parentLinkCount = new int[size];
+        for (int link = 0; link < linkCount; link++) {
+            parentLinkCount[builder.linkParents[link]]++;
+        }
+        prefixSum(parentLinkCount, childOffsets);
+        int[] next = Arrays.copyOf(childOffsets, size);
+        for (int link = 0; link < linkCount; link++) {
+            int index = next[builder.linkParents[link]]++;
+            children[index] = builder.linkChildren[link];
+            amounts[index] = builder.linkAmounts[link];
+            linkParents[index] = builder.linkParents[link];
+        }
+
+        parentOffsets = new int[size + 1];
+        parentLinks = new int[linkCount];
+        int[] childLinkCount = new int[size];
+        for (int link = 0; link < linkCount; link++) {
+            childLinkCount[children[link]]++;
+        }
+        prefixSum(childLinkCount, parentOffsets);
+        next = Arrays.copyOf(parentOffsets, size);
+        for (int link = 0; link < linkCount; link++) {
+            parentLinks[next[children[link]]++] = link;
+        }
+
+        topologicalOrder = sortTopologically();
+    }
+
+    /**
+     * Build the graph of a product structure
+     *
+     * @param root : the root component of the structure
+     * @return the graph
+     * @throws IllegalArgumentException if the structure contains a cycle
+     */
+    public static ProductStructureGraph of(ComponentDTO root) {
+        Builder builder = new Builder();
+        builder.add(root);
+        return new ProductStructureGraph(builder);
+    }
+
+    /**
+     * @return the number of distinct parts
+     */
+    public int size() {
+        return numbers.length;
+    }
+
+    /**
+     * @return the number of distinct links between parts
+     */
+    public int getLinkCount() {
+        return children.length;
+    }
+
+    public int getRoot() {
+        return 0;
+    }
+
+    /**
+     * @param number : a part number
+     * @return the id of the part, or -1 if it is not in the structure
+     */
+    public int getId(String number) {
+        Integer id = ids.get(number);
+        return id != null ? id : -1;
+    }
+
+    public String getNumber(int id) {
+        return numbers[id];
+    }
+
+    public String getVersion(int id) {
+        return versions[id];
+    }
+
+    public int getIteration(int id) {
+        return iterations[id];
+    }
+
+    public int getChildCount(int id) {
+        return childOffsets[id + 1] - childOffsets[id];
+    }
+
+    /**
+     * @param id    : the parent part
+     * @param index : the link index, from 0 to {@link #getChildCount(int)} - 1, in the order of the components
+     * @return the child part of the link
+     */
+    public int getChild(int id, int index) {
+        return children[childOffsets[id] + checkIndex(index, getChildCount(id))];
+    }
+
+    /**
+     * @param id    : the parent part
+     * @param index : the link index, from 0 to {@link #getChildCount(int)} - 1
+     * @return the amount of the link, 1 if unspecified
+     */
+    public double getAmount(int id, int index) {
+        return amounts[childOffsets[id] + checkIndex(index, getChildCount(id))];
+    }
+
+    public int[] getChildren(int id) {
+        return Arrays.copyOfRange(children, childOffsets[id], childOffsets[id + 1]);
+    }
+
+    /**
+     * @return the number of links using the part, a parent using it twice is counted twice
+     */
+    public int getParentCount(int id) {
+        return parentOffsets[id + 1] - parentOffsets[id];
+    }
+
+    /**
+     * @return the distinct parts directly using the part
+     */
+    public int[] getParents(int id) {
+        int[] parents = new int[getParentCount(id)];
+        int count = 0;
+        for (int i = parentOffsets[id]; i < parentOffsets[id + 1]; i++) {
+            int parent = linkParents[parentLinks[i]];
+            boolean found = false;
+            for (int j = 0; j < count && !found; j++) {
+                found = parents[j] == parent;
+            }
+            if (!found) {
+                parents[count++] = parent;
+            }
+        }
+        return Arrays.copyOf(parents, count);
+    }
+
+    /**
+     * @return the distinct parts using the part directly or through sub-assemblies, nearest first
+     */
+    public int[] getWhereUsed(int id) {
+        boolean[] visited = new boolean[size()];
+        int[] queue = new int[size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = id;
+        visited[id] = true;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                int parent = linkParents[parentLinks[i]];
+                if (!visited[parent]) {
+                    visited[parent] = true;
+                    queue[tail++] = parent;
+                }
+            }
+        }
+        return Arrays.copyOfRange(queue, 1, tail);
+    }
+
+    /**
+     * @return the parts ordered so that parents come before their components, the root first
+     */
+    public int[] getTopologicalOrder() {
+        return topologicalOrder.clone();
+    }
+
+    /**
+     * Count the occurrences of each part in the tree, whatever the link amounts
+     *
+     * @return the number of occurrences, indexed by part id
+     */
+    public long[] getOccurrenceCounts() {
+        long[] counts = new long[size()];
+        counts[getRoot()] = 1;
+        for (int parent : topologicalOrder) {
+            for (int link = childOffsets[parent]; link < childOffsets[parent + 1]; link++) {
+                counts[children[link]] += counts[parent];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Roll up the link amounts : the quantity of a part is the sum, over its occurrences, of the product
+     * of the amounts along the path from the root
+     *
+     * @return the total quantities, indexed by part id
+     */
+    public double[] getTotalQuantities() {
+        double[] quantities = new double[size()];
+        quantities[getRoot()] = 1;
+        for (int parent : topologicalOrder) {
+            for (int link = childOffsets[parent]; link < childOffsets[parent + 1]; link++) {
+                quantities[children[link]] += quantities[parent] * amounts[link];
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * @return the total number of occurrences in the tree
+     */
+    public long getOccurrenceCount() {
+        long total = 0;
+        for (long count : getOccurrenceCounts()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Visit the occurrences of the tree depth first, in the order of the components, without recursion
+     *
+     * @param visitor : called for each occurrence
+     */
+    public void visitOccurrences(OccurrenceVisitor visitor) {
+        int capacity = 16;
+        int[] stackIds = new int[capacity];
+        int[] stackDepths = new int[capacity];
+        double[] stackQuantities = new double[capacity];
+        int top = 0;
+        stackIds[top] = getRoot();
+        stackQuantities[top] = 1;
+        top++;
+        while (top > 0) {
+            top--;
+            int id = stackIds[top];
+            int depth = stackDepths[top];
+            double quantity = stackQuantities[top];
+            if (!visitor.visit(id, depth, quantity)) {
+                continue;
+            }
+            int childCount = getChildCount(id);
+            if (top + childCount > capacity) {
+                capacity = Math.max(capacity * 2, top + childCount);
+                stackIds = Arrays.copyOf(stackIds, capacity);
+                stackDepths = Arrays.copyOf(stackDepths, capacity);
+                stackQuantities = Arrays.copyOf(stackQuantities, capacity);
+            }
+            // Pushed in reverse order so that the first component is visited first
+            for (int link = childOffsets[id + 1] - 1; link >= childOffsets[id]; link--) {
+                stackIds[top] = children[link];
+                stackDepths[top] = depth + 1;
+                stackQuantities[top] = quantity * amounts[link];
+                top++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProductStructureGraph{root=" + numbers[0] + ", parts=" + size() + ", links=" + getLinkCount() + "}";
+    }
+
+    private int[] sortTopologically() {
+        int size = size();
+        int[] pendingParents = new int[size];
+        for (int id = 0; id < size; id++) {
+            pendingParents[id] = getParentCount(id);
+        }
+        int[] order = new int[size];
+        int head = 0;
+        int tail = 0;
+        if (pendingParents[getRoot()] > 0) {
+            throw new IllegalArgumentException("Cycle in the product structure of " + numbers[0]);
+        }
+        order[tail++] = getRoot();
+        while (head < tail) {
+            int parent = order[head++];
+            for (int link = childOffsets[parent]; link < childOffsets[parent + 1]; link++) {
+                if (--pendingParents[children[link]] == 0) {
+                    order[tail++] = children[link];
+                }
+            }
+        }
+        if (tail < size) {
+            throw new IllegalArgumentException("Cycle in the product structure of " + numbers[0]);
+        }
+        return order;
+    }
+
+    private static void prefixSum(int[] counts, int[] offsets) {
+        for (int i = 0; i < counts.length; i++) {
+            offsets[i + 1] = offsets[i] + counts[i];
+        }
+    }
+
+    private static int checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + count);
+        }
+        return index;
+    }
+
+    /**
+     * Collects parts and links while walking the component tree
+     */
+    private static class Builder {
+
+        private final List<String> numbers = new ArrayList<>();
+        private final List<String> versions = new ArrayList<>();
+        private int[] iterations = new int[16];
+        private final Map<String, Integer> ids = new HashMap<>();
+        private boolean[] expanded = new boolean[16];
+
+        private int linkCount;
+        private int[] linkParents = new int[16];
+        private int[] linkChildren = new int[16];
+        private double[] linkAmounts = new double[16];
+
+        private void add(ComponentDTO root) {
+            Deque<ComponentDTO> stack = new ArrayDeque<>();
+            stack.push(root);
+            intern(root);
+            while (!stack.isEmpty()) {
+                ComponentDTO component = stack.pop();
+                int id = ids.get(component.getNumber());
+                List<ComponentDTO> components = component.getComponents();
+                if (components == null || components.isEmpty()) {
+                    continue;
+                }
+                // A part has the same components wherever it is used, its links are added once. Other
+                // occurrences are still walked: a depth limited structure may only expand some of them
+                boolean addLinks = !expanded[id];
+                expanded[id] = true;
+                for (ComponentDTO child : components) {
+                    int childId = intern(child);
+                    if (addLinks) {
+                        addLink(id, childId, child.getAmount() != null ? child.getAmount() : DEFAULT_AMOUNT);
+                    }
+                    stack.push(child);
+                }
+            }
+        }
+
+        private int intern(ComponentDTO component) {
+            Integer id = ids.get(component.getNumber());
+            if (id != null) {
+                return id;
+            }
+            int newId = numbers.size();
+            ids.put(component.getNumber(), newId);
+            numbers.add(component.getNumber());
+            versions.add(component.getVersion());
+            if (newId == iterations.length) {
+                iterations = Arrays.copyOf(iterations, newId * 2);
+                expanded = Arrays.copyOf(expanded, newId * 2);
+            }
+            iterations[newId] = component.getIteration() != null ? component.getIteration() : 0;
+            return newId;
+        }
+
+        private void addLink(int parent, int child, double amount) {
+            if (linkCount == linkParents.length) {
+                linkParents = Arrays.copyOf(linkParents, linkCount * 2);
+                linkChildren = Arrays.copyOf(linkChildren, linkCount * 2);
+                linkAmounts = Arrays.copyOf(linkAmounts, linkCount * 2);
+            }
+            linkParents[linkCount] = parent;
+            linkChildren[linkCount] = child;
+            linkAmounts[linkCount] = amount;
+            linkCount++;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.structure;
+
+import com.docdoku.api.async.AsyncApiExecutor;
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.ConfigurationItemDTO;
+import com.docdoku.api.services.ProductsApi;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Client side index of the assemblies using each part, over the structures of all the products
+ * (configuration items) of a workspace, example :
+ * <pre>
+ *     WhereUsedIndex index = WhereUsedIndex.builder(client, workspace).build();
+ *     Map&lt;String, ApiException&gt; failures = index.refresh();
+ *     Set&lt;String&gt; assemblies = index.getWhereUsed(number);
+ *     Set&lt;String&gt; products = index.getImpactedProducts(number);
+ *     ...
+ *     // After a change in a product structure
+ *     index.refresh(ciId);
+ * </pre>
+ * Product structures are fetched concurrently and kept as {@link ProductStructureGraph}. Their links are merged into
+ * reverse edges, from each part to the assemblies using it, counted by product so that a single product can be
+ * refreshed or removed without rebuilding the index. Queries read the in-memory index only.
+ * <p>
+ * Instances are thread safe : queries can run while the index is refreshed, and refreshes can run concurrently.
+ * Each fetch takes a generation number when it starts, a structure fetched before the last indexed or removed one
+ * of the same product is dropped, so that a slow refresh does not override a newer structure.
+ */
+public class WhereUsedIndex {
+
+    private final ApiClient client;
+    private final String workspaceId;
+    private final String configSpec;
+    private final int maxConcurrency;
+    private final AsyncApiExecutor executor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong generation = new AtomicLong();
+
+    // Guarded by lock
+    private final Map<String, ProductStructureGraph> graphs = new HashMap<>();
+    // Part number -> number of the assembly using it -> number of products with this link
+    private final Map<String, Map<String, Integer>> parents = new HashMap<>();
+    // Product id -> generation of its last indexed structure or removal
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private WhereUsedIndex(Builder builder) {
+        this.client = builder.client;
+        this.workspaceId = builder.workspaceId;
+        this.configSpec = builder.configSpec;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * Create a builder
+     *
+     * @param client      : the client used to fetch the structures
+     * @param workspaceId : the workspace of the products to index
+     * @return a new builder
+     */
+    public static Builder builder(ApiClient client, String workspaceId) {
+        return new Builder(client, workspaceId);
+    }
+
+    /**
+     * Index the structures of all the products of the workspace, fetched concurrently.
+     * <p>
+     * Products which no longer exist are removed from the index, unless indexed again since they were listed.
+     * A product whose structure cannot be fetched keeps its previously indexed structure, if any.
+     *
+     * @return the failures by product id
+     * @throws ApiException         if the products of the workspace cannot be listed
+     * @throws InterruptedException if interrupted while waiting for the structures
+     */
+    public Map<String, ApiException> refresh() throws ApiException, InterruptedException {
+        long listed = generation.incrementAndGet();
+        List<ConfigurationItemDTO> products = new ProductsApi(client).getConfigurationItems(workspaceId);
+        Set<String> productIds = new LinkedHashSet<>();
+        for (ConfigurationItemDTO product : products) {
+            productIds.add(product.getId());
+        }
+
+        Map<String, ApiException> failures = new LinkedHashMap<>();
+        if (!productIds.isEmpty()) {
+            AsyncApiExecutor async = executor != null ? executor
+                    : AsyncApiExecutor.newVirtualThreadExecutor(Math.min(maxConcurrency, productIds.size()));
+            try {
+                Map<String, CompletableFuture<Fetched>> futures = new LinkedHashMap<>();
+                for (String productId : productIds) {
+                    futures.put(productId, async.submit(() -> {
+                        long fetched = generation.incrementAndGet();
+                        return new Fetched(fetched, fetch(productId));
+                    }));
+                }
+                for (Map.Entry<String, CompletableFuture<Fetched>> future : futures.entrySet()) {
+                    try {
+                        Fetched fetched = future.getValue().get();
+                        put(future.getKey(), fetched.generation, fetched.graph);
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        failures.put(future.getKey(), cause instanceof ApiException ? (ApiException) cause : new ApiException(cause));
+                    }
+                }
+            } finally {
+                if (async != executor) {
+                    async.close();
+                }
+            }
+        }
+
+        for (String productId : getProductIds()) {
+            if (!productIds.contains(productId)) {
+                remove(productId, listed);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Fetch and index again the structure of one product
+     *
+     * @param productId : the configuration item id
+     * @throws ApiException if the structure cannot be fetched, the previously indexed one is then kept
+     */
+    public void refresh(String productId) throws ApiException {
+        long fetched = generation.incrementAndGet();
+        put(productId, fetched, fetch(productId));
+    }
+
+    /**
+     * Remove a product from the index
+     *
+     * @param productId : the configuration item id
+     */
+    public void remove(String productId) {
+        remove(productId, generation.incrementAndGet());
+    }
+
+    private void remove(String productId, long removed) {
+        lock.writeLock().lock();
+        try {
+            if (!isNewer(productId, removed)) {
+                return;
+            }
+            generations.put(productId, removed);
+            ProductStructureGraph graph = graphs.remove(productId);
+            if (graph != null) {
+                updateLinks(graph, -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param number : a part number
+     * @return the assemblies directly using the part, in any indexed product
+     */
+    public Set<String> getParents(String number) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> partParents = parents.get(number);
+            return partParents != null ? Collections.unmodifiableSet(new TreeSet<>(partParents.keySet())) : Collections.emptySet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param number : a part number
+     * @return the assemblies using the part directly or through sub-assemblies, in any indexed product, nearest first
+     */
+    public Set<String> getWhereUsed(String number) {
+        lock.readLock().lock();
+        try {
+            Set<String> whereUsed = new LinkedHashSet<>();
+            Deque<String> queue = new ArrayDeque<>();
+            queue.add(number);
+            while (!queue.isEmpty()) {
+                Map<String, Integer> partParents = parents.get(queue.poll());
+                if (partParents == null) {
+                    continue;
+                }
+                for (String parent : partParents.keySet()) {
+                    if (!parent.equals(number) && whereUsed.add(parent)) {
+                        queue.add(parent);
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(whereUsed);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param number : a part number
+     * @return the ids of the products whose structure contains the part
+     */
+    public Set<String> getImpactedProducts(String number) {
+        lock.readLock().lock();
+        try {
+            Set<String> products = new TreeSet<>();
+            for (Map.Entry<String, ProductStructureGraph> graph : graphs.entrySet()) {
+                if (graph.getValue().getId(number) >= 0) {
+                    products.add(graph.getKey());
+                }
+            }
+            return Collections.unmodifiableSet(products);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId : the configuration item id
+     * @return the indexed structure of the product, or null if it is not indexed
+     */
+    public ProductStructureGraph getGraph(String productId) {
+        lock.readLock().lock();
+        try {
+            return graphs.get(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the indexed products
+     */
+    public Set<String> getProductIds() {
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableSet(new TreeSet<>(graphs.keySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getWorkspaceId() {
+        return workspaceId;
+    }
+
+    public String getConfigSpec() {
+        return configSpec;
+    }
+
+    private ProductStructureGraph fetch(String productId) throws ApiException {
+        ProductsApi productsApi = new ProductsApi(client);
+        try {
+            return ProductStructureGraph.of(productsApi.filterProductStructure(workspaceId, productId, configSpec, "-1", -1, null, false));
+        } catch (IllegalArgumentException e) {
+            // Cycle in the structure
+            throw new ApiException(e);
+        }
+    }
+
+    private void put(String productId, long fetched, ProductStructureGraph graph) {
+        lock.writeLock().lock();
+        try {
+            if (!isNewer(productId, fetched)) {
+                return;
+            }
+            generations.put(productId, fetched);
+            ProductStructureGraph previous = graphs.put(productId, graph);
+            if (previous != null) {
+                updateLinks(previous, -1);
+            }
+            updateLinks(graph, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Guarded by the write lock
+    private boolean isNewer(String productId, long generation) {
+        Long last = generations.get(productId);
+        return last == null || last < generation;
+    }
+
+    private void updateLinks(ProductStructureGraph graph, int delta) {
+        for (int id = 0; id < graph.size(); id++) {
+            String number = graph.getNumber(id);
+            for (int parent : graph.getParents(id)) {
+                String parentNumber = graph.getNumber(parent);
+                Map<String, Integer> partParents = parents.computeIfAbsent(number, k -> new HashMap<>());
+                int count = partParents.getOrDefault(parentNumber, 0) + delta;
+                if (count > 0) {
+                    partParents.put(parentNumber, count);
+                } else {
+                    partParents.remove(parentNumber);
+                    if (partParents.isEmpty()) {
+                        parents.remove(number);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Fetched {
+
+        private final long generation;
+        private final ProductStructureGraph graph;
+
+        private Fetched(long generation, ProductStructureGraph graph) {
+            this.generation = generation;
+            this.graph = graph;
+        }
+    }
+
+    /**
+     * Builder for a where-used index.
+     * <p>
+     * Defaults: "latest" configuration, structures fetched 4 at a time, on virtual threads when available.
+     */
+    public static class Builder {
+
+        private final ApiClient client;
+        private final String workspaceId;
+        private String configSpec = "latest";
+        private int maxConcurrency = 4;
+        private AsyncApiExecutor executor;
+
+        private Builder(ApiClient client, String workspaceId) {
+            this.client = Objects.requireNonNull(client, "client");
+            this.workspaceId = Objects.requireNonNull(workspaceId, "workspaceId");
+        }
+
+        /**
+         * Configuration used to filter the structures, such as "wip" or "latest"
+         */
+        public Builder configSpec(String configSpec) {
+            this.configSpec = Objects.requireNonNull(configSpec, "configSpec");
+            return this;
+        }
+
+        /**
+         * Maximum number of structures fetched at the same time
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency < 1: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Fetch the structures on an existing executor, left open after a refresh
+         */
+        public Builder executor(AsyncApiExecutor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        public WhereUsedIndex build() {
+            return new WhereUsedIndex(this);
+        }
+    }
+}
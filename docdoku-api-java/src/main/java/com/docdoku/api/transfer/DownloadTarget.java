@@ -0,0 +1,48 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transfer;
+
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Destination of a file download run through {@code StreamingApiClient.download}, receiving the response
+ * body in place of the temporary file of the generated client.
+ */
+public interface DownloadTarget {
+
+    /**
+     * Get the headers to add to the download request, such as a Range header
+     */
+    Map<String, String> getRequestHeaders();
+
+    /**
+     * Write the body of a successful download response
+     *
+     * @param response : the response, its body must be consumed and closed
+     * @return the file written
+     * @throws IOException if the body cannot be read or written
+     */
+    File receive(Response response) throws IOException;
+}
@@ -0,0 +1,81 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * A downloaded file, with the digests computed while its content was written
+ */
+public final class DownloadedFile {
+
+    private final File file;
+    private final long length;
+    private final byte[] md5;
+    private final byte[] sha256;
+
+    DownloadedFile(File file, long length, byte[] md5, byte[] sha256) {
+        this.file = file;
+        this.length = length;
+        this.md5 = md5;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Describe a file already written, its digests being computed from its content
+     */
+    public static DownloadedFile of(File file) throws IOException {
+        MessageDigest md5 = ResumableDownloader.newDigest("MD5");
+        MessageDigest sha256 = ResumableDownloader.newDigest("SHA-256");
+        ResumableDownloader.update(file, md5, sha256);
+        return new DownloadedFile(file, file.length(), md5.digest(), sha256.digest());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public byte[] getMd5() {
+        return md5.clone();
+    }
+
+    public byte[] getSha256() {
+        return sha256.clone();
+    }
+
+    /**
+     * Get the MD5 digest encoded in base 64, as stored in the metadata of the command line client
+     */
+    public String getMd5Base64() {
+        return Base64.getEncoder().encodeToString(md5);
+    }
+
+    public String getSha256Base64() {
+        return Base64.getEncoder().encodeToString(sha256);
+    }
+}
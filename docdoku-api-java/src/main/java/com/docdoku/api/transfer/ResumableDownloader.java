@@ -0,0 +1,386 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transfer;
+
+import com.docdoku.api.StreamingApiClient;
+import com.docdoku.api.async.ApiCall;
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.squareup.okhttp.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads files with HTTP Range requests, resuming interrupted transfers instead of starting over.
+ * <p>
+ * The file is written to {@code <destination>.part}, next to a {@code <destination>.part.json} journal holding
+ * the validators (ETag, Last-Modified) and the length of the remote file. When the transfer fails while reading
+ * the body it is resumed from the bytes already received, with an If-Range header so that a file modified in
+ * the meantime is downloaded again from the start. A partial file left by a previous run is resumed the same way.
+ * <p>
+ * The body is streamed to the partial file through MD5 and SHA-256 digests, so the file is neither held in
+ * memory nor read again. Once complete, the length of the file is checked against the remote one, and its digest
+ * against the {@code Digest} header (md5 or sha-256) if the server sent one, before the file is moved to its destination.
+ * Files are requested without content encoding, so that ranges and length apply to the file bytes.
+ * Resuming requires a client created by {@code DocDokuPLMClientFactory}, other clients download from the start.
+ */
+public class ResumableDownloader {
+
+    private static final Logger LOGGER = Logger.getLogger(ResumableDownloader.class.getName());
+
+    private static final Gson GSON = new Gson();
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String JOURNAL_SUFFIX = ".part.json";
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    private ResumableDownloader(Builder builder) {
+        maxAttempts = builder.maxAttempts;
+        initialBackoff = builder.initialBackoff;
+        maxBackoff = builder.maxBackoff;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Download a file, resuming a previous partial download of the same destination, example :
+     * <p>
+     * {@code downloader.download(client, file, () -> partBinaryApi.downloadPartFile(workspace, number, version, iteration, "nativecad", name, null, null, null, null, null, null))}
+     *
+     * @param client      : the client the call runs on
+     * @param destination : the file to write, replaced once the download is complete and checked
+     * @param call        : the download call, it must run a single api call on the client, in the calling thread
+     * @return the destination file and its digests
+     * @throws ApiException if the download fails after all attempts, or the downloaded file fails the integrity check
+     */
+    public DownloadedFile download(ApiClient client, File destination, ApiCall<File> call) throws ApiException {
+        if (!(client instanceof StreamingApiClient)) {
+            moveTo(call.call(), destination);
+            return digest(destination);
+        }
+        StreamingApiClient streamingClient = (StreamingApiClient) client;
+        File partial = new File(destination.getPath() + PARTIAL_SUFFIX);
+        File journalFile = new File(destination.getPath() + JOURNAL_SUFFIX);
+        for (int attempt = 1; ; attempt++) {
+            PartialFile target = new PartialFile(partial, journalFile);
+            try {
+                streamingClient.download(target, call);
+                target.verify();
+                moveTo(partial, destination);
+                Files.deleteIfExists(journalFile.toPath());
+                return target.md5 == null ? digest(destination)
+                        : new DownloadedFile(destination, destination.length(), target.md5.digest(), target.sha256.digest());
+            } catch (ApiException e) {
+                if (e.getCode() == 416) {
+                    // The partial file does not match the remote one anymore
+                    resetPartial(target);
+                } else if (!isInterruptedTransfer(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Download of " + destination.getName() + " interrupted after " + partial.length()
+                        + " bytes, resuming (attempt " + (attempt + 1) + "/" + maxAttempts + ")", e);
+                sleep(Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 20)));
+            } catch (IOException e) {
+                throw new ApiException(e);
+            }
+        }
+    }
+
+    private static void resetPartial(PartialFile target) throws ApiException {
+        try {
+            target.reset();
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    private static boolean isInterruptedTransfer(ApiException e) {
+        return e.getCode() == 0 && e.getCause() instanceof IOException && !(e.getCause() instanceof InterruptedIOException
+                && Thread.currentThread().isInterrupted());
+    }
+
+    private static void sleep(long millis) throws ApiException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(new InterruptedIOException("Interrupted while resuming a download"));
+        }
+    }
+
+    private static DownloadedFile digest(File file) throws ApiException {
+        try {
+            return DownloadedFile.of(file);
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    static MessageDigest newDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static void update(File file, MessageDigest... digests) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+    private static void moveTo(File source, File destination) throws ApiException {
+        Path target = destination.toPath();
+        try {
+            try {
+                Files.move(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    /**
+     * Remote file validators and length, saved before the body is written
+     */
+    private static final class Journal {
+        private String etag;
+        private String lastModified;
+        private long length = -1;
+        private String digest;
+    }
+
+    private static final class PartialFile implements DownloadTarget {
+
+        private final File partial;
+        private final File journalFile;
+        private Journal journal;
+        private MessageDigest md5;
+        private MessageDigest sha256;
+
+        private PartialFile(File partial, File journalFile) throws ApiException {
+            this.partial = partial;
+            this.journalFile = journalFile;
+            journal = readJournal();
+            if (journal == null && partial.exists() && !partial.delete()) {
+                throw new ApiException("Cannot delete partial download " + partial);
+            }
+        }
+
+        @Override
+        public Map<String, String> getRequestHeaders() {
+            Map<String, String> headers = new HashMap<>();
+            // Ranges and length must apply to the file bytes: a gzip encoded body would break both
+            headers.put("Accept-Encoding", "identity");
+            long received = partial.length();
+            String validator = journal == null ? null : journal.etag != null ? journal.etag : journal.lastModified;
+            if (received == 0 || validator == null) {
+                return headers;
+            }
+            headers.put("Range", "bytes=" + received + "-");
+            headers.put("If-Range", validator);
+            return headers;
+        }
+
+        @Override
+        public File receive(Response response) throws IOException {
+            boolean append = false;
+            if (response.code() == 206) {
+                Matcher contentRange = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+                if (!contentRange.matches() || Long.parseLong(contentRange.group(1)) != partial.length()) {
+                    response.body().close();
+                    reset();
+                    throw new IOException("Unexpected Content-Range " + response.header("Content-Range") + " for " + partial.length() + " bytes received");
+                }
+                append = true;
+            } else {
+                // Whole file: first download, remote file changed, or range not supported
+                journal = new Journal();
+                journal.etag = response.header("ETag");
+                journal.lastModified = response.header("Last-Modified");
+                journal.length = response.body().contentLength();
+                journal.digest = response.header("Digest");
+                writeJournal();
+            }
+            md5 = newDigest("MD5");
+            sha256 = newDigest("SHA-256");
+            if (append) {
+                update(partial, md5, sha256);
+            }
+            OutputStream out = new DigestOutputStream(new DigestOutputStream(new FileOutputStream(partial, append), md5), sha256);
+            try (BufferedSink sink = Okio.buffer(Okio.sink(out))) {
+                sink.writeAll(response.body().source());
+            } finally {
+                response.body().close();
+            }
+            return partial;
+        }
+
+        private void verify() throws ApiException, IOException {
+            if (journal == null) {
+                return;
+            }
+            long length = journal.length;
+            String digest = journal.digest;
+            if (length >= 0 && partial.length() != length) {
+                String message = "Downloaded " + partial.length() + " bytes instead of " + length;
+                reset();
+                throw new ApiException(message);
+            }
+            if (digest != null && md5 != null && !matchesDigest(digest)) {
+                reset();
+                throw new ApiException("Downloaded file does not match its digest " + digest);
+            }
+        }
+
+        private boolean matchesDigest(String digestHeader) {
+            for (String digest : digestHeader.split(",")) {
+                int separator = digest.indexOf('=');
+                if (separator == -1) {
+                    continue;
+                }
+                String algorithm = digest.substring(0, separator).trim().toLowerCase();
+                String expected = digest.substring(separator + 1).trim();
+                // Digests are cloned as they are read again for the result
+                if ("md5".equals(algorithm)) {
+                    return expected.equals(Base64.getEncoder().encodeToString(clone(md5).digest()));
+                }
+                if ("sha-256".equals(algorithm)) {
+                    return expected.equals(Base64.getEncoder().encodeToString(clone(sha256).digest()));
+                }
+            }
+            // No supported algorithm
+            return true;
+        }
+
+        private static MessageDigest clone(MessageDigest digest) {
+            try {
+                return (MessageDigest) digest.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void reset() throws IOException {
+            journal = null;
+            Files.deleteIfExists(partial.toPath());
+            Files.deleteIfExists(journalFile.toPath());
+        }
+
+        private Journal readJournal() {
+            if (!journalFile.exists()) {
+                return null;
+            }
+            try (Reader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                return GSON.fromJson(reader, Journal.class);
+            } catch (IOException | JsonParseException e) {
+                LOGGER.log(Level.FINE, "Ignoring unreadable download journal " + journalFile, e);
+                return null;
+            }
+        }
+
+        private void writeJournal() throws IOException {
+            try (Writer writer = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                GSON.toJson(journal, writer);
+            }
+        }
+    }
+
+    /**
+     * Builder for a resumable downloader.
+     * <p>
+     * Defaults: 5 attempts, resuming after 1 second then twice longer each time, up to 30 seconds.
+     */
+    public static class Builder {
+
+        private int maxAttempts = 5;
+        private long initialBackoff = TimeUnit.SECONDS.toMillis(1);
+        private long maxBackoff = TimeUnit.SECONDS.toMillis(30);
+
+        private Builder() {
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 0 || max < initial) {
+                throw new IllegalArgumentException("Invalid backoff: " + initial + ", " + max);
+            }
+            this.initialBackoff = unit.toMillis(initial);
+            this.maxBackoff = unit.toMillis(max);
+            return this;
+        }
+
+        public ResumableDownloader build() {
+            return new ResumableDownloader(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transport;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Sends requests over the network in place of the OkHttp engine of an {@code ApiClient}.
+ * <p>
+ * A transport receives the requests once they went through the client application and network
+ * interceptors, see {@link TransportInterceptor}. It must be thread safe, and the body of the responses
+ * it returns must be closed by the caller to release the underlying stream.
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a request and return its response, without following redirects to other hosts
+     *
+     * @param request : the request, its url is absolute
+     * @return the response, its request being the given one
+     * @throws IOException if the request could not be sent or its response could not be read
+     */
+    Response execute(Request request) throws IOException;
+}
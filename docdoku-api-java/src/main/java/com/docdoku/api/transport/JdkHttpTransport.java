@@ -0,0 +1,406 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transport;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.AsyncTimeout;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport sending the requests with the JDK {@code java.net.http.HttpClient}, available with JDK 11+.
+ * <p>
+ * The JDK client negotiates HTTP/2 (ALPN over TLS, upgrade in clear text) and multiplexes concurrent requests
+ * over a single connection per host, its I/O being asynchronous. As this library targets Java 8, the JDK client
+ * is driven by reflection: check {@link #isAvailable()} before building a transport.
+ * <p>
+ * Request bodies are buffered in memory, or in a temporary file above a size threshold, before being sent.
+ * Like the OkHttp engine, the transport asks for gzip responses and decompresses them unless the request sets
+ * its own Accept-Encoding header. The request timeout bounds the wait for the response headers, the read timeout
+ * bounds each read of the response body.
+ */
+public class JdkHttpTransport implements HttpTransport {
+
+    // Headers the JDK client sets itself and refuses from callers
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade", "transfer-encoding"));
+
+    private static final Jdk JDK = Jdk.load();
+
+    private final Object httpClient;
+    private final Duration requestTimeout;
+    private final long readTimeout;
+    private final long maxBufferedBodySize;
+
+    private JdkHttpTransport(Builder builder) {
+        requestTimeout = builder.requestTimeout == 0 ? null : Duration.ofMillis(builder.requestTimeout);
+        readTimeout = builder.readTimeout;
+        maxBufferedBodySize = builder.maxBufferedBodySize;
+        try {
+            Object clientBuilder = JDK.httpClientNewBuilder.invoke(null);
+            JDK.clientBuilderVersion.invoke(clientBuilder, JDK.version(builder.http2 ? "HTTP_2" : "HTTP_1_1"));
+            JDK.clientBuilderFollowRedirects.invoke(clientBuilder, JDK.redirect("NORMAL"));
+            if (builder.connectTimeout != 0) {
+                JDK.clientBuilderConnectTimeout.invoke(clientBuilder, Duration.ofMillis(builder.connectTimeout));
+            }
+            if (builder.executor != null) {
+                JDK.clientBuilderExecutor.invoke(clientBuilder, builder.executor);
+            }
+            httpClient = JDK.clientBuilderBuild.invoke(clientBuilder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create the JDK HttpClient", e);
+        }
+    }
+
+    /**
+     * Tell whether the JDK HttpClient is available, that is whether the JVM is a JDK 11+ one
+     */
+    public static boolean isAvailable() {
+        return JDK != null;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the JDK HttpClient is not available
+     */
+    public static Builder builder() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("java.net.http.HttpClient requires JDK 11+");
+        }
+        return new Builder();
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        Path spooled = null;
+        CompletableFuture<?> future = null;
+        try {
+            Object requestBuilder = JDK.httpRequestNewBuilder.invoke(null, URI.create(request.urlString()));
+            RequestBody body = request.body();
+            Object publisher;
+            if (body == null) {
+                publisher = JDK.bodyPublishersNoBody.invoke(null);
+            } else if (body.contentLength() >= 0 && body.contentLength() <= maxBufferedBodySize) {
+                Buffer buffer = new Buffer();
+                body.writeTo(buffer);
+                publisher = JDK.bodyPublishersOfByteArray.invoke(null, (Object) buffer.readByteArray());
+            } else {
+                spooled = Files.createTempFile("docdoku-request", ".tmp");
+                try (BufferedSink sink = Okio.buffer(Okio.sink(spooled))) {
+                    body.writeTo(sink);
+                }
+                publisher = JDK.bodyPublishersOfFile.invoke(null, spooled);
+            }
+            JDK.requestBuilderMethod.invoke(requestBuilder, request.method(), publisher);
+            Headers headers = request.headers();
+            for (int i = 0; i < headers.size(); i++) {
+                if (!RESTRICTED_HEADERS.contains(headers.name(i).toLowerCase(Locale.ROOT))) {
+                    JDK.requestBuilderHeader.invoke(requestBuilder, headers.name(i), headers.value(i));
+                }
+            }
+            if (body != null && body.contentType() != null && request.header("Content-Type") == null) {
+                JDK.requestBuilderHeader.invoke(requestBuilder, "Content-Type", body.contentType().toString());
+            }
+            // Transparent gzip, as done by the OkHttp engine
+            boolean transparentGzip = request.header("Accept-Encoding") == null;
+            if (transparentGzip) {
+                JDK.requestBuilderHeader.invoke(requestBuilder, "Accept-Encoding", "gzip");
+            }
+            if (requestTimeout != null) {
+                JDK.requestBuilderTimeout.invoke(requestBuilder, requestTimeout);
+            }
+            Object jdkRequest = JDK.requestBuilderBuild.invoke(requestBuilder);
+            future = (CompletableFuture<?>) JDK.httpClientSendAsync.invoke(httpClient, jdkRequest, JDK.bodyHandlersOfInputStream.invoke(null));
+            Object jdkResponse = future.get();
+            return toResponse(request, jdkResponse, transparentGzip);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("JDK HttpClient failed to send " + request.urlString(), cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.urlString());
+        } catch (InvocationTargetException e) {
+            throw new IOException("JDK HttpClient failed to send " + request.urlString(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (spooled != null) {
+                Files.deleteIfExists(spooled);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Response toResponse(Request request, Object jdkResponse, boolean transparentGzip) throws IllegalAccessException, InvocationTargetException {
+        int code = (Integer) JDK.responseStatusCode.invoke(jdkResponse);
+        Object version = JDK.responseVersion.invoke(jdkResponse);
+        Map<String, List<String>> headerMap = (Map<String, List<String>>) JDK.httpHeadersMap.invoke(JDK.responseHeaders.invoke(jdkResponse));
+        Headers.Builder headers = new Headers.Builder();
+        headerMap.forEach((name, values) -> {
+            if (!name.startsWith(":")) {
+                values.forEach(value -> headers.add(name, value));
+            }
+        });
+        Headers responseHeaders = headers.build();
+        InputStream stream = (InputStream) JDK.responseBody.invoke(jdkResponse);
+        Source source = Okio.source(stream);
+        if (readTimeout != 0) {
+            source = new ReadTimeout(stream, readTimeout).source(source);
+        }
+        if (transparentGzip && "gzip".equalsIgnoreCase(responseHeaders.get("Content-Encoding")) && hasBody(request, code, responseHeaders)) {
+            source = new GzipSource(source);
+            responseHeaders = responseHeaders.newBuilder().removeAll("Content-Encoding").removeAll("Content-Length").build();
+        }
+        String contentType = responseHeaders.get("Content-Type");
+        String contentLength = responseHeaders.get("Content-Length");
+        ResponseBody body = ResponseBody.create(contentType == null ? null : MediaType.parse(contentType),
+                contentLength == null ? -1 : Long.parseLong(contentLength), Okio.buffer(source));
+        return new Response.Builder()
+                .request(request)
+                .protocol("HTTP_2".equals(((Enum<?>) version).name()) ? Protocol.HTTP_2 : Protocol.HTTP_1_1)
+                .code(code)
+                .message("")
+                .headers(responseHeaders)
+                .body(body)
+                .build();
+    }
+
+    private static boolean hasBody(Request request, int code, Headers headers) {
+        return !"HEAD".equals(request.method()) && code != 204 && code != 304 && !"0".equals(headers.get("Content-Length"));
+    }
+
+    /**
+     * Bounds each read of a response body: the JDK client blocks the reading thread until data comes, with no
+     * timeout of its own and regardless of interruption, so the body stream is closed when a read takes too long.
+     */
+    private static final class ReadTimeout extends AsyncTimeout {
+
+        private final InputStream stream;
+
+        private ReadTimeout(InputStream stream, long timeout) {
+            this.stream = stream;
+            timeout(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        protected void timedOut() {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // The pending read fails anyway
+            }
+        }
+    }
+
+    /**
+     * Reflective access to java.net.http, resolved once
+     */
+    private static final class Jdk {
+
+        private final Class<?> versionClass;
+        private final Class<?> redirectClass;
+        private final Method httpClientNewBuilder;
+        private final Method httpClientSendAsync;
+        private final Method clientBuilderVersion;
+        private final Method clientBuilderFollowRedirects;
+        private final Method clientBuilderConnectTimeout;
+        private final Method clientBuilderExecutor;
+        private final Method clientBuilderBuild;
+        private final Method httpRequestNewBuilder;
+        private final Method requestBuilderMethod;
+        private final Method requestBuilderHeader;
+        private final Method requestBuilderTimeout;
+        private final Method requestBuilderBuild;
+        private final Method bodyPublishersNoBody;
+        private final Method bodyPublishersOfByteArray;
+        private final Method bodyPublishersOfFile;
+        private final Method bodyHandlersOfInputStream;
+        private final Method responseStatusCode;
+        private final Method responseVersion;
+        private final Method responseHeaders;
+        private final Method responseBody;
+        private final Method httpHeadersMap;
+
+        private Jdk() throws ClassNotFoundException, NoSuchMethodException {
+            Class<?> httpClient = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> httpRequest = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> httpResponse = Class.forName("java.net.http.HttpResponse");
+            Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+            versionClass = Class.forName("java.net.http.HttpClient$Version");
+            redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+            httpClientNewBuilder = httpClient.getMethod("newBuilder");
+            httpClientSendAsync = httpClient.getMethod("sendAsync", httpRequest, bodyHandler);
+            clientBuilderVersion = clientBuilder.getMethod("version", versionClass);
+            clientBuilderFollowRedirects = clientBuilder.getMethod("followRedirects", redirectClass);
+            clientBuilderConnectTimeout = clientBuilder.getMethod("connectTimeout", Duration.class);
+            clientBuilderExecutor = clientBuilder.getMethod("executor", Executor.class);
+            clientBuilderBuild = clientBuilder.getMethod("build");
+            httpRequestNewBuilder = httpRequest.getMethod("newBuilder", URI.class);
+            requestBuilderMethod = requestBuilder.getMethod("method", String.class, bodyPublisher);
+            requestBuilderHeader = requestBuilder.getMethod("header", String.class, String.class);
+            requestBuilderTimeout = requestBuilder.getMethod("timeout", Duration.class);
+            requestBuilderBuild = requestBuilder.getMethod("build");
+            bodyPublishersNoBody = bodyPublishers.getMethod("noBody");
+            bodyPublishersOfByteArray = bodyPublishers.getMethod("ofByteArray", byte[].class);
+            bodyPublishersOfFile = bodyPublishers.getMethod("ofFile", Path.class);
+            bodyHandlersOfInputStream = bodyHandlers.getMethod("ofInputStream");
+            responseStatusCode = httpResponse.getMethod("statusCode");
+            responseVersion = httpResponse.getMethod("version");
+            responseHeaders = httpResponse.getMethod("headers");
+            responseBody = httpResponse.getMethod("body");
+            httpHeadersMap = httpHeaders.getMethod("map");
+        }
+
+        private static Jdk load() {
+            try {
+                return new Jdk();
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object version(String name) {
+            return Enum.valueOf((Class) versionClass, name);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object redirect(String name) {
+            return Enum.valueOf((Class) redirectClass, name);
+        }
+    }
+
+    /**
+     * Builder for a JDK HttpClient transport.
+     * <p>
+     * Defaults: HTTP/2 preferred, no timeout, request bodies up to 8 MiB buffered in memory, default JDK executor.
+     * A timeout of 0 means no timeout.
+     */
+    public static class Builder {
+
+        private boolean http2 = true;
+        private long connectTimeout;
+        private long requestTimeout;
+        private long readTimeout;
+        private long maxBufferedBodySize = 8 * 1024 * 1024;
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * Prefer HTTP/2, or stick to HTTP/1.1
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeout = toMillis("connectTimeout", timeout, unit);
+            return this;
+        }
+
+        /**
+         * Timeout of a request, up to its response headers
+         */
+        public Builder requestTimeout(long timeout, TimeUnit unit) {
+            this.requestTimeout = toMillis("requestTimeout", timeout, unit);
+            return this;
+        }
+
+        /**
+         * Timeout of each read of a response body
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeout = toMillis("readTimeout", timeout, unit);
+            return this;
+        }
+
+        /**
+         * Size above which request bodies are spooled to a temporary file rather than buffered in memory
+         */
+        public Builder maxBufferedBodySize(long maxBufferedBodySize) {
+            if (maxBufferedBodySize < 0) {
+                throw new IllegalArgumentException("maxBufferedBodySize < 0: " + maxBufferedBodySize);
+            }
+            this.maxBufferedBodySize = maxBufferedBodySize;
+            return this;
+        }
+
+        /**
+         * Executor of the JDK client asynchronous tasks
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public JdkHttpTransport build() {
+            return new JdkHttpTransport(this);
+        }
+
+        private static long toMillis(String name, long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException(name + " < 0: " + duration);
+            }
+            return unit.toMillis(duration);
+        }
+    }
+}
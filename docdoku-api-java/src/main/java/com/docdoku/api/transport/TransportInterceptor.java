@@ -0,0 +1,102 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api.transport;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application interceptor handing the requests of a client to an {@link HttpTransport} instead of the OkHttp engine.
+ * <p>
+ * The interceptor does not proceed with the OkHttp chain: it runs itself the application interceptors added
+ * after it, then the network interceptors, then the transport. Its position in the application interceptors
+ * does not matter. Network interceptors get no connection. OkHttp timeouts, cache and call cancellation do not
+ * apply to the requests, the transport has its own.
+ */
+public class TransportInterceptor implements Interceptor {
+
+    private final OkHttpClient httpClient;
+    private final HttpTransport transport;
+
+    /**
+     * @param httpClient : the client whose interceptors list holds this interceptor
+     * @param transport  : the transport sending the requests
+     */
+    public TransportInterceptor(OkHttpClient httpClient, HttpTransport transport) {
+        this.httpClient = httpClient;
+        this.transport = transport;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        List<Interceptor> applicationInterceptors = httpClient.interceptors();
+        int position = applicationInterceptors.indexOf(this);
+        if (position == -1) {
+            throw new IllegalStateException("Transport interceptor not in the interceptors of its client");
+        }
+        List<Interceptor> interceptors = new ArrayList<>();
+        interceptors.addAll(applicationInterceptors.subList(position + 1, applicationInterceptors.size()));
+        interceptors.addAll(httpClient.networkInterceptors());
+        return new TransportChain(interceptors, 0, chain.request()).proceed(chain.request());
+    }
+
+    private final class TransportChain implements Chain {
+
+        private final List<Interceptor> interceptors;
+        private final int index;
+        private final Request request;
+
+        private TransportChain(List<Interceptor> interceptors, int index, Request request) {
+            this.interceptors = interceptors;
+            this.index = index;
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            if (index < interceptors.size()) {
+                return interceptors.get(index).intercept(new TransportChain(interceptors, index + 1, request));
+            }
+            return transport.execute(request);
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.http.AdaptiveConcurrencyLimiter;
+import com.docdoku.api.http.ApiOperation;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final String URL = "http://localhost/api/workspaces/ws/parts/P-001-A";
+
+    @Test
+    public void releaseEmptyResponseTest() throws IOException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+                .limits(1, 1, 1)
+                .maxQueueWait(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        // The generated client never reads the body of a 204, the permit must not wait for it
+        limiter.intercept(new FakeChain(request("PartApi.checkIn"), r -> FakeChain.response(r, 204, "")));
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        limiter.intercept(new FakeChain(request("PartApi.checkOut"), r -> FakeChain.response(r, 200, "")));
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        Request head = new Request.Builder().url(URL).head().build();
+        limiter.intercept(new FakeChain(head, r -> FakeChain.response(r, 200, "")));
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        // A permit was available for each call
+        Assert.assertEquals(0, limiter.getQueueTimeoutCount());
+    }
+
+    @Test
+    public void holdPermitUntilBodyConsumedTest() throws IOException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+                .limits(1, 1, 1)
+                .maxQueueWait(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        Response response = limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> chunked(r, "{}")));
+        Assert.assertEquals(1, limiter.getInFlight());
+        try {
+            limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> chunked(r, "{}")));
+            Assert.fail("The limit is 1 and the first body is not consumed");
+        } catch (IOException e) {
+            Assert.assertEquals(1, limiter.getQueueTimeoutCount());
+        }
+
+        Assert.assertEquals("{}", response.body().string());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void nestedCallWhileReadingBodyTest() throws IOException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+                .limits(1, 1, 1)
+                .maxQueueWait(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        // As a StreamingApiClient.forEach consumer calling the api for each element of a list
+        Response list = limiter.intercept(new FakeChain(request("PartApi.getPartRevisions"), r -> chunked(r, "[{},{}]")));
+        Assert.assertEquals('[', list.body().source().readByte());
+        long start = System.nanoTime();
+        try {
+            limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> FakeChain.response(r, 200, "{}")));
+            Assert.fail("The nested call cannot get a permit while the list is read");
+        } catch (IOException e) {
+            // Fails once the queue wait expires rather than waiting for its own permit forever
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            Assert.assertEquals(1, limiter.getQueueTimeoutCount());
+        }
+
+        list.body().close();
+        Assert.assertEquals(0, limiter.getInFlight());
+        limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> FakeChain.response(r, 200, "{}"))).body().close();
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void decreaseOncePerRoundTripTest() throws IOException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+                .limits(20, 1, 200)
+                .build();
+
+        // The second request is sent while the first is in flight, both are rejected
+        limiter.intercept(new FakeChain(request("PartApi.checkOut"), first -> {
+            limiter.intercept(new FakeChain(request("PartApi.checkOut"), second -> FakeChain.response(second, 503, "")));
+            return FakeChain.response(first, 503, "");
+        }));
+        Assert.assertEquals(1, limiter.getDecreaseCount());
+        Assert.assertEquals(15, limiter.getLimit());
+
+        // Sent after the decrease
+        limiter.intercept(new FakeChain(request("PartApi.checkOut"), r -> FakeChain.response(r, 503, "")));
+        Assert.assertEquals(2, limiter.getDecreaseCount());
+        Assert.assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    public void latencyPerOperationTest() throws IOException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+                .latencyTolerance(3)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> delayed(r, 5)));
+        }
+        // A slower endpoint is compared with its own latency, not with the fastest one
+        for (int i = 0; i < 5; i++) {
+            limiter.intercept(new FakeChain(request("PartBinaryApi.downloadPartFile"), r -> delayed(r, 50)));
+        }
+        Assert.assertEquals(0, limiter.getDecreaseCount());
+
+        limiter.intercept(new FakeChain(request("PartApi.getPartRevision"), r -> delayed(r, 50)));
+        Assert.assertEquals(1, limiter.getDecreaseCount());
+    }
+
+    private static Request request(String operation) {
+        return new Request.Builder().url(URL).tag(ApiOperation.named(operation)).build();
+    }
+
+    private static Response chunked(Request request, String content) {
+        // Unknown content length, as for a chunked body
+        return FakeChain.response(request, 200, "").newBuilder()
+                .body(ResponseBody.create(MediaType.parse("application/json"), -1, new Buffer().writeUtf8(content)))
+                .build();
+    }
+
+    private static Response delayed(Request request, long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return FakeChain.response(request, 204, "");
+    }
+}
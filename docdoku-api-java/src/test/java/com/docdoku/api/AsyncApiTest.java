@@ -0,0 +1,91 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.async.AsyncApiExecutor;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.AccountDTO;
+import com.docdoku.api.models.WorkspaceListDTO;
+import com.docdoku.api.services.AccountsApi;
+import com.docdoku.api.services.WorkspacesApi;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+@RunWith(JUnit4.class)
+public class AsyncApiTest {
+
+    private static final int CALLS = 50;
+    private static final AsyncApiExecutor async = AsyncApiExecutor.newVirtualThreadExecutor(8);
+
+    private AccountsApi accountsApi = new AccountsApi(TestConfig.REGULAR_USER_CLIENT);
+    private WorkspacesApi workspacesApi = new WorkspacesApi(TestConfig.REGULAR_USER_CLIENT);
+
+    @AfterClass
+    public static void closeExecutor() {
+        async.close();
+    }
+
+    @Test
+    public void composeCallsTest() throws ExecutionException, InterruptedException {
+        CompletableFuture<AccountDTO> account = async.submit(() -> accountsApi.getAccount());
+        CompletableFuture<WorkspaceListDTO> workspaces = async.submit(() -> workspacesApi.getWorkspacesForConnectedUser());
+
+        String summary = account.thenCombine(workspaces,
+                (a, w) -> a.getLogin() + ":" + w.getAllWorkspaces().size()).get();
+
+        Assert.assertTrue(summary.startsWith(TestConfig.LOGIN + ":"));
+    }
+
+    @Test
+    public void fanOutTest() throws ExecutionException, InterruptedException {
+        List<CompletableFuture<AccountDTO>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(async.submit(() -> accountsApi.getAccount()));
+        }
+        List<AccountDTO> accounts = AsyncApiExecutor.allAsList(futures).get();
+        Assert.assertEquals(CALLS, accounts.size());
+        for (AccountDTO account : accounts) {
+            Assert.assertEquals(TestConfig.LOGIN, account.getLogin());
+        }
+    }
+
+    @Test
+    public void failureTest() throws InterruptedException {
+        CompletableFuture<WorkspaceListDTO> future = async.submit(() -> {
+            throw new ApiException(404, "Not found");
+        });
+        try {
+            future.get();
+            Assert.fail("Future should complete exceptionally");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ApiException);
+            Assert.assertEquals(404, ((ApiException) e.getCause()).getCode());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.async.BulkFetchResult;
+import com.docdoku.api.async.BulkPartFetcher;
+import com.docdoku.api.async.BulkPartFetcher.PartKey;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.models.WorkspaceDTO;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BulkPartFetcherTest {
+
+    private static final int PARTS = 20;
+    private static WorkspaceDTO workspace;
+    private static List<PartRevisionDTO> parts = new ArrayList<>();
+
+    @BeforeClass
+    public static void initTestData() throws ApiException {
+        workspace = TestUtils.createWorkspace(BulkPartFetcherTest.class.getName());
+        for (int i = 0; i < PARTS; i++) {
+            parts.add(TestUtils.createPart(workspace.getId(), TestUtils.randomString()));
+        }
+    }
+
+    @AfterClass
+    public static void deleteWorkspace() throws ApiException {
+        TestUtils.deleteWorkspace(workspace);
+    }
+
+    @Test
+    public void fetchTest() throws InterruptedException {
+        List<PartKey> keys = new ArrayList<>();
+        for (PartRevisionDTO part : parts) {
+            keys.add(new PartKey(workspace.getId(), part.getNumber(), part.getVersion()));
+            keys.add(PartKey.latest(workspace.getId(), part.getNumber()));
+        }
+        // Duplicates are fetched once
+        keys.addAll(new ArrayList<>(keys));
+        PartKey missing = PartKey.latest(workspace.getId(), TestUtils.randomString());
+        keys.add(missing);
+
+        BulkFetchResult<PartKey, PartRevisionDTO> result = BulkPartFetcher.builder(TestConfig.REGULAR_USER_CLIENT)
+                .maxConcurrency(4)
+                .build()
+                .fetch(keys);
+
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(PARTS * 2, result.getValues().size());
+        Assert.assertEquals(1, result.getErrors().size());
+        Assert.assertEquals(404, result.getErrors().get(missing).getCode());
+        for (PartRevisionDTO part : parts) {
+            PartRevisionDTO fetched = result.getValues().get(PartKey.latest(workspace.getId(), part.getNumber()));
+            Assert.assertEquals(part.getNumber(), fetched.getNumber());
+            Assert.assertEquals(part.getVersion(), fetched.getVersion());
+        }
+    }
+}
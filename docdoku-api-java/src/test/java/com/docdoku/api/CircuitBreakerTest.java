@@ -0,0 +1,138 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.http.ApiOperation;
+import com.docdoku.api.http.CircuitBreaker;
+import com.docdoku.api.http.CircuitBreaker.State;
+import com.docdoku.api.http.CircuitBreakerOpenException;
+import com.squareup.okhttp.Request;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class CircuitBreakerTest {
+
+    private static final String OPERATION = "PartBinaryApi.downloadPartFile";
+
+    private List<String> changes = new ArrayList<>();
+
+    private CircuitBreaker breaker = CircuitBreaker.builder()
+            .window(4, 2)
+            .failureRateThreshold(0.5)
+            .openDuration(50, TimeUnit.MILLISECONDS)
+            .halfOpenProbes(2)
+            .listener((operation, from, to) -> changes.add(operation + " " + from + " -> " + to))
+            .build();
+
+    @Test
+    public void openAndCloseTest() throws Exception {
+        call(OPERATION, 200);
+        call(OPERATION, 200);
+        call(OPERATION, 503);
+        Assert.assertEquals(State.CLOSED, breaker.getState(OPERATION));
+        // Two failures in the last four requests
+        call(OPERATION, 500);
+        Assert.assertEquals(State.OPEN, breaker.getState(OPERATION));
+
+        assertRejected(OPERATION);
+        // Other operations are unaffected
+        Assert.assertEquals(200, call("PartApi.getPartRevision", 200));
+
+        Thread.sleep(60);
+        call(OPERATION, 200);
+        Assert.assertEquals(State.HALF_OPEN, breaker.getState(OPERATION));
+        call(OPERATION, 200);
+        Assert.assertEquals(State.CLOSED, breaker.getState(OPERATION));
+
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals(OPERATION + " CLOSED -> OPEN", changes.get(0));
+        Assert.assertEquals(OPERATION + " OPEN -> HALF_OPEN", changes.get(1));
+        Assert.assertEquals(OPERATION + " HALF_OPEN -> CLOSED", changes.get(2));
+    }
+
+    @Test
+    public void failedProbeTest() throws Exception {
+        call(OPERATION, 503);
+        call(OPERATION, 503);
+        Assert.assertEquals(State.OPEN, breaker.getState(OPERATION));
+
+        Thread.sleep(60);
+        call(OPERATION, 503);
+        Assert.assertEquals(State.OPEN, breaker.getState(OPERATION));
+        assertRejected(OPERATION);
+    }
+
+    @Test
+    public void probesLimitTest() throws Exception {
+        call(OPERATION, 503);
+        call(OPERATION, 503);
+        Thread.sleep(60);
+
+        // Only two probes may be in flight while half-open
+        Request request = request(OPERATION);
+        breaker.intercept(new FakeChain(request, first ->
+                breaker.intercept(new FakeChain(request, second -> {
+                    assertRejected(OPERATION);
+                    return FakeChain.response(second, 200, "");
+                }))));
+        Assert.assertEquals(State.CLOSED, breaker.getState(OPERATION));
+    }
+
+    @Test
+    public void untaggedRequestsShareCircuitTest() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Request request = new Request.Builder().url("http://localhost/api/workspaces/ws/parts/P-00" + i + "-A").build();
+            breaker.intercept(new FakeChain(request, r -> FakeChain.response(r, 503, "")));
+        }
+        Assert.assertEquals(1, breaker.getStates().size());
+        Assert.assertEquals(State.OPEN, breaker.getState(CircuitBreaker.UNTAGGED));
+
+        breaker.reset();
+        Assert.assertEquals(State.CLOSED, breaker.getState(CircuitBreaker.UNTAGGED));
+    }
+
+    private int call(String operation, int code) throws IOException {
+        return breaker.intercept(new FakeChain(request(operation), r -> FakeChain.response(r, code, ""))).code();
+    }
+
+    private void assertRejected(String operation) throws IOException {
+        try {
+            call(operation, 200);
+            Assert.fail("The circuit of " + operation + " must reject requests");
+        } catch (CircuitBreakerOpenException e) {
+            // Expected
+        }
+    }
+
+    private static Request request(String operation) {
+        return new Request.Builder().url("http://localhost/api/workspaces/ws/parts/P-001-A")
+                .tag(ApiOperation.named(operation))
+                .build();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.http.CompressionInterceptor;
+import com.squareup.okhttp.FormEncodingBuilder;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class CompressionInterceptorTest {
+
+    private static final String URL = "http://localhost/api/workspaces/ws/parts";
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private CompressionInterceptor compression = CompressionInterceptor.builder().compressRequests(1024).build();
+
+    @Test
+    public void compressLargeJsonRequestTest() throws IOException {
+        String json = repeat("{\"number\":\"P-001\"},", 200);
+        Request request = new Request.Builder().url(URL).post(RequestBody.create(JSON, json)).build();
+        FakeChain chain = new FakeChain(request, r -> FakeChain.response(r, 200, ""));
+        compression.intercept(chain);
+
+        Request sent = chain.getReceived().get(0);
+        Assert.assertEquals("gzip", sent.header("Content-Encoding"));
+        Assert.assertEquals(request.body().contentType(), sent.body().contentType());
+        Buffer body = new Buffer();
+        sent.body().writeTo(body);
+        long compressedSize = body.size();
+        Assert.assertEquals(compressedSize, sent.body().contentLength());
+        Assert.assertEquals(json, Okio.buffer(new GzipSource(body)).readUtf8());
+
+        Assert.assertEquals(1, compression.getCompressedRequestCount());
+        Assert.assertEquals(json.length(), compression.getUncompressedBytes());
+        Assert.assertEquals(compressedSize, compression.getCompressedBytes());
+        Assert.assertTrue(compressedSize < json.length());
+    }
+
+    @Test
+    public void sendOtherRequestsAsIsTest() throws IOException {
+        String large = repeat("a", 4096);
+        Request[] requests = {
+                // Small
+                new Request.Builder().url(URL).post(RequestBody.create(JSON, "{}")).build(),
+                // Binary
+                new Request.Builder().url(URL).post(RequestBody.create(MediaType.parse("application/octet-stream"), large)).build(),
+                // Form
+                new Request.Builder().url(URL).post(new FormEncodingBuilder().add("name", large).build()).build(),
+                // Already encoded
+                new Request.Builder().url(URL).header("Content-Encoding", "br").post(RequestBody.create(JSON, large)).build()
+        };
+        for (Request request : requests) {
+            FakeChain chain = new FakeChain(request, r -> FakeChain.response(r, 200, ""));
+            compression.intercept(chain);
+            Assert.assertSame(request, chain.getReceived().get(0));
+        }
+        Assert.assertEquals(0, compression.getCompressedRequestCount());
+    }
+
+    @Test
+    public void decompressResponseTest() throws IOException {
+        String json = repeat("{\"number\":\"P-001\"},", 50);
+        Buffer gzip = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(gzip))) {
+            sink.writeUtf8(json);
+        }
+        long gzipSize = gzip.size();
+        Request request = new Request.Builder().url(URL).build();
+        Response response = compression.intercept(new FakeChain(request, r -> FakeChain.response(r, 200, "")
+                .newBuilder()
+                .header("Content-Encoding", "gzip")
+                .header("Content-Length", String.valueOf(gzipSize))
+                .body(ResponseBody.create(JSON, gzipSize, gzip))
+                .build()));
+
+        Assert.assertNull(response.header("Content-Encoding"));
+        Assert.assertNull(response.header("Content-Length"));
+        Assert.assertEquals(json, response.body().string());
+        Assert.assertEquals(1, compression.getDecompressedResponseCount());
+
+        // Plain responses are left untouched
+        Response plain = compression.intercept(new FakeChain(request, r -> FakeChain.response(r, 200, json)));
+        Assert.assertEquals(json, plain.body().string());
+        Assert.assertEquals(1, compression.getDecompressedResponseCount());
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
@@ -32,6 +32,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This class tests DocDokuPLMClient class
  *
@@ -56,6 +60,53 @@ public class DocDokuPLMClientTest {
     }
 
 
+    @Test
+    public void sharedConnectionPoolTests() {
+        DocDokuPLMClientFactory factory = DocDokuPLMClientFactory.builder()
+                .maxIdleConnections(10)
+                .keepAliveDuration(30, TimeUnit.SECONDS)
+                .maxRequestsPerHost(8)
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+
+        ApiClient first = factory.newClient(TestConfig.URL);
+        ApiClient second = factory.newBasicClient(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD);
+
+        Assert.assertSame(factory.getConnectionPool(), first.getHttpClient().getConnectionPool());
+        Assert.assertSame(first.getHttpClient().getConnectionPool(), second.getHttpClient().getConnectionPool());
+        Assert.assertSame(first.getHttpClient().getDispatcher(), second.getHttpClient().getDispatcher());
+        Assert.assertEquals(8, factory.getDispatcher().getMaxRequestsPerHost());
+        Assert.assertEquals(5000, first.getHttpClient().getConnectTimeout());
+        Assert.assertEquals(30000, second.getHttpClient().getReadTimeout());
+    }
+
+    @Test
+    public void jwtTokenRefreshTests() throws ApiException {
+        DocDokuPLMClientFactory factory = DocDokuPLMClientFactory.builder().build();
+        JWTTokenManager tokenManager = factory.newJWTTokenManager(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD, TestConfig.DEBUG);
+        ApiClient client = factory.newJWTClient(tokenManager, TestConfig.URL, TestConfig.DEBUG);
+
+        String token = tokenManager.getToken();
+        Assert.assertNotNull(token);
+        Assert.assertTrue(tokenManager.getExpirationTime() > System.currentTimeMillis());
+
+        String refreshed = tokenManager.refreshToken();
+        Assert.assertNotNull(refreshed);
+        runTest(client);
+    }
+
+    @Test
+    public void jwtExpirationDecodingTests() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString("{\"sub\":\"user?\",\"exp\":1500000000}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(1500000000000L, JWTTokenManager.getExpirationTime(header + "." + payload + ".signature"));
+
+        String noExp = encoder.encodeToString("{\"sub\":\"user\"}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(Long.MAX_VALUE, JWTTokenManager.getExpirationTime(header + "." + noExp + ".signature"));
+    }
+
     private void runTest(ApiClient client) throws ApiException {
         WorkspacesApi workspacesApi = new WorkspacesApi(client);
         AccountsApi accountsApi = new AccountsApi(client);
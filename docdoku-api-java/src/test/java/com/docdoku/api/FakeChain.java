@@ -0,0 +1,92 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interceptor chain answering requests without network, for the unit tests of the interceptors
+ */
+public class FakeChain implements Interceptor.Chain {
+
+    public interface Server {
+        Response serve(Request request) throws IOException;
+    }
+
+    private final Request request;
+    private final Server server;
+    private final List<Request> received = new ArrayList<>();
+
+    public FakeChain(Request request, Server server) {
+        this.request = request;
+        this.server = server;
+    }
+
+    public static Response response(Request request, int code, String body) {
+        return response(request, code, body, new String[0]);
+    }
+
+    /**
+     * @param headers : alternate header names and values
+     */
+    public static Response response(Request request, int code, String body, String... headers) {
+        Response.Builder builder = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Status " + code)
+                .body(ResponseBody.create(MediaType.parse("text/plain"), body));
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    @Override
+    public Response proceed(Request request) throws IOException {
+        received.add(request);
+        return server.serve(request);
+    }
+
+    @Override
+    public Connection connection() {
+        return null;
+    }
+
+    public List<Request> getReceived() {
+        return received;
+    }
+}
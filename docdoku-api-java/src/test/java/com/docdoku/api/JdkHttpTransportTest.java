@@ -0,0 +1,197 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.transport.JdkHttpTransport;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+@RunWith(JUnit4.class)
+public class JdkHttpTransportTest {
+
+    private static final String BODY = "{\"number\":\"P-001\",\"name\":\"Part\"}";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        Assume.assumeTrue(JdkHttpTransport.isAvailable());
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/echo", exchange -> {
+            byte[] body = readAll(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+            exchange.getResponseHeaders().add("X-Method", exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/gzip", exchange -> {
+            readAll(exchange.getRequestBody());
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stall", exchange -> {
+            readAll(exchange.getRequestBody());
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write('{');
+                out.flush();
+                release.await(10, TimeUnit.SECONDS);
+                out.write('}');
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        release.countDown();
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sendRequestBodyAndHeadersTest() throws IOException {
+        JdkHttpTransport transport = JdkHttpTransport.builder().http2(false).build();
+        Request request = new Request.Builder()
+                .url(url + "/echo")
+                .put(RequestBody.create(MediaType.parse("application/json"), BODY))
+                .build();
+
+        Response response = transport.execute(request);
+
+        Assert.assertEquals(200, response.code());
+        Assert.assertSame(request, response.request());
+        Assert.assertEquals("PUT", response.header("X-Method"));
+        Assert.assertEquals(BODY, response.body().string());
+    }
+
+    @Test
+    public void spoolLargeRequestBodyTest() throws IOException {
+        JdkHttpTransport transport = JdkHttpTransport.builder().http2(false).maxBufferedBodySize(4).build();
+        Request request = new Request.Builder()
+                .url(url + "/echo")
+                .post(RequestBody.create(MediaType.parse("application/json"), BODY))
+                .build();
+
+        Assert.assertEquals(BODY, transport.execute(request).body().string());
+    }
+
+    @Test
+    public void decompressGzipResponseTest() throws IOException {
+        JdkHttpTransport transport = JdkHttpTransport.builder().http2(false).build();
+
+        Response response = transport.execute(new Request.Builder().url(url + "/gzip").build());
+
+        Assert.assertNull(response.header("Content-Encoding"));
+        Assert.assertNull(response.header("Content-Length"));
+        Assert.assertEquals(-1, response.body().contentLength());
+        Assert.assertEquals(BODY, response.body().string());
+    }
+
+    @Test
+    public void keepResponseEncodingAskedByCallerTest() throws IOException {
+        JdkHttpTransport transport = JdkHttpTransport.builder().http2(false).build();
+
+        Response identity = transport.execute(new Request.Builder().url(url + "/gzip").header("Accept-Encoding", "identity").build());
+        Assert.assertNull(identity.header("Content-Encoding"));
+        Assert.assertEquals(BODY, identity.body().string());
+
+        // Asked explicitly, the encoded body is left to the caller
+        Response gzip = transport.execute(new Request.Builder().url(url + "/gzip").header("Accept-Encoding", "gzip").build());
+        Assert.assertEquals("gzip", gzip.header("Content-Encoding"));
+        Assert.assertNotEquals(BODY, gzip.body().string());
+    }
+
+    @Test
+    public void timeOutStalledResponseBodyTest() throws IOException {
+        JdkHttpTransport transport = JdkHttpTransport.builder().http2(false).readTimeout(200, TimeUnit.MILLISECONDS).build();
+
+        Response response = transport.execute(new Request.Builder().url(url + "/stall").build());
+        long start = System.nanoTime();
+        try {
+            response.body().string();
+            Assert.fail("The stalled body must time out");
+        } catch (InterruptedIOException e) {
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        } finally {
+            response.body().close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
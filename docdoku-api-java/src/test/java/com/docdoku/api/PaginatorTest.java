@@ -0,0 +1,84 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.models.WorkspaceDTO;
+import com.docdoku.api.paging.Paginator;
+import com.docdoku.api.services.PartsApi;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RunWith(JUnit4.class)
+public class PaginatorTest {
+
+    private static final int PARTS = 25;
+
+    private PartsApi partsApi = new PartsApi(TestConfig.REGULAR_USER_CLIENT);
+    private static WorkspaceDTO workspace;
+
+    @BeforeClass
+    public static void initWorkspace() throws ApiException {
+        workspace = TestUtils.createWorkspace(PaginatorTest.class.getName());
+        for (int i = 0; i < PARTS; i++) {
+            TestUtils.createPart(workspace.getId(), "GeneratedPart");
+        }
+    }
+
+    @AfterClass
+    public static void deleteWorkspace() throws ApiException {
+        TestUtils.deleteWorkspace(workspace);
+    }
+
+    @Test
+    public void iterateAllPagesTest() {
+        Paginator<PartRevisionDTO> partRevisions = Paginator.builder(
+                (start, max) -> partsApi.getPartRevisions(workspace.getId(), start, max))
+                .pageSize(4)
+                .build();
+
+        Set<String> numbers = partRevisions.stream().map(PartRevisionDTO::getNumber).collect(Collectors.toSet());
+        Assert.assertEquals(PARTS, numbers.size());
+    }
+
+    @Test
+    public void limitTest() {
+        Paginator<PartRevisionDTO> partRevisions = Paginator.builder(
+                (start, max) -> partsApi.getPartRevisions(workspace.getId(), start, max))
+                .pageSize(4)
+                .start(5)
+                .limit(10)
+                .build();
+
+        List<PartRevisionDTO> page = partRevisions.stream().collect(Collectors.toList());
+        Assert.assertEquals(10, page.size());
+    }
+
+}
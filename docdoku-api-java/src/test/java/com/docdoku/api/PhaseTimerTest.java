@@ -0,0 +1,130 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.http.PhaseTimer;
+import com.docdoku.api.http.PhaseTimings;
+import com.docdoku.api.services.WorkspacesApi;
+import com.squareup.okhttp.OkHttpClient;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+@RunWith(JUnit4.class)
+public class PhaseTimerTest {
+
+    // Unsigned token without expiration
+    private static final String TOKEN = "eyJhbGciOiJub25lIn0.e30.c2lnbmF0dXJl";
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // Drain the request
+                }
+            }
+            boolean login = exchange.getRequestURI().getPath().endsWith("/auth/login");
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            if (login) {
+                exchange.getResponseHeaders().add("jwt", TOKEN);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/api";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void timeLoginAndCallsTest() throws ApiException {
+        Queue<PhaseTimings> timings = new ConcurrentLinkedQueue<>();
+        DocDokuPLMClientFactory factory = DocDokuPLMClientFactory.builder()
+                .phaseTimer(PhaseTimer.builder().listener(timings::add).build())
+                .build();
+
+        ApiClient client = factory.newJWTClient(url, "user", "password");
+        new WorkspacesApi(client).getWorkspacesForConnectedUser();
+
+        List<PhaseTimings> calls = new ArrayList<>(timings);
+        Assert.assertEquals(2, calls.size());
+
+        PhaseTimings login = calls.get(0);
+        Assert.assertEquals("AuthApi.login", login.getOperation());
+        Assert.assertEquals(200, login.getStatus());
+        Assert.assertFalse(login.isConnectionReused());
+        Assert.assertTrue(login.getTotal() >= login.getLookup() + login.getConnect());
+
+        // The connection opened by the login client is reused by the client it logged in
+        PhaseTimings call = calls.get(1);
+        Assert.assertEquals("WorkspacesApi.getWorkspacesForConnectedUser", call.getOperation());
+        Assert.assertTrue(call.isConnectionReused());
+        Assert.assertEquals(0, call.getLookup(), 0);
+        Assert.assertEquals(0, call.getConnect(), 0);
+        Assert.assertEquals(2, call.getResponseBytes());
+        Assert.assertTrue(call.toString().contains("lookup"));
+    }
+
+    @Test
+    public void timedClientsShareConnectionsTest() {
+        PhaseTimer timer = PhaseTimer.builder().build();
+        OkHttpClient first = new OkHttpClient();
+        OkHttpClient second = new OkHttpClient();
+        timer.install(first);
+        PhaseTimer.builder().build().install(second);
+
+        // Pooled connections are looked up by address, which includes the ssl socket factory
+        Assert.assertEquals(first.getSslSocketFactory(), second.getSslSocketFactory());
+        Assert.assertSame(first.getSocketFactory(), second.getSocketFactory());
+
+        // Installing again keeps the timed factory
+        timer.install(first);
+        Assert.assertEquals(second.getSslSocketFactory(), first.getSslSocketFactory());
+    }
+}
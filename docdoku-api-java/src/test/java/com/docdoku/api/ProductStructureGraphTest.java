@@ -0,0 +1,190 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.models.ComponentDTO;
+import com.docdoku.api.structure.ProductStructureGraph;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ProductStructureGraphTest {
+
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Product using the shared sub-assembly SUB in two places :
+     * PRODUCT -> 2 x SUB -> 4 x SCREW, 1 x PLATE
+     *         -> 1 x FRAME -> 3 x SUB
+     *                      -> 10 x SCREW
+     */
+    private static ComponentDTO product() {
+        return component("PRODUCT", null,
+                component("SUB", 2.0, component("SCREW", 4.0), component("PLATE", null)),
+                component("FRAME", 1.0,
+                        component("SUB", 3.0, component("SCREW", 4.0), component("PLATE", null)),
+                        component("SCREW", 10.0)));
+    }
+
+    @Test
+    public void storeSharedSubAssemblyOnceTest() {
+        ProductStructureGraph graph = ProductStructureGraph.of(product());
+
+        Assert.assertEquals(5, graph.size());
+        // PRODUCT -> SUB, FRAME ; SUB -> SCREW, PLATE ; FRAME -> SUB, SCREW
+        Assert.assertEquals(6, graph.getLinkCount());
+        Assert.assertEquals("PRODUCT", graph.getNumber(graph.getRoot()));
+        Assert.assertEquals("A", graph.getVersion(graph.getRoot()));
+        Assert.assertEquals(1, graph.getIteration(graph.getRoot()));
+
+        int sub = graph.getId("SUB");
+        Assert.assertEquals(2, graph.getChildCount(sub));
+        Assert.assertEquals("SCREW", graph.getNumber(graph.getChild(sub, 0)));
+        Assert.assertEquals(4, graph.getAmount(sub, 0), DELTA);
+        // Unspecified amount
+        Assert.assertEquals(1, graph.getAmount(sub, 1), DELTA);
+        Assert.assertEquals(-1, graph.getId("UNKNOWN"));
+    }
+
+    @Test
+    public void rollUpQuantitiesTest() {
+        ProductStructureGraph graph = ProductStructureGraph.of(product());
+        long[] counts = graph.getOccurrenceCounts();
+        double[] quantities = graph.getTotalQuantities();
+
+        Assert.assertEquals(1, counts[graph.getId("PRODUCT")]);
+        Assert.assertEquals(2, counts[graph.getId("SUB")]);
+        Assert.assertEquals(3, counts[graph.getId("SCREW")]);
+        Assert.assertEquals(2, counts[graph.getId("PLATE")]);
+        Assert.assertEquals(9, graph.getOccurrenceCount());
+
+        // SUB : 2 + 1 x 3
+        Assert.assertEquals(5, quantities[graph.getId("SUB")], DELTA);
+        // SCREW : 5 x 4 + 1 x 10
+        Assert.assertEquals(30, quantities[graph.getId("SCREW")], DELTA);
+        Assert.assertEquals(5, quantities[graph.getId("PLATE")], DELTA);
+    }
+
+    @Test
+    public void findWhereUsedTest() {
+        ProductStructureGraph graph = ProductStructureGraph.of(product());
+        int screw = graph.getId("SCREW");
+
+        Assert.assertEquals(2, graph.getParentCount(screw));
+        Assert.assertEquals(Arrays.asList("SUB", "FRAME"), numbers(graph, graph.getParents(screw)));
+        Assert.assertEquals(Arrays.asList("SUB", "FRAME", "PRODUCT"), numbers(graph, graph.getWhereUsed(screw)));
+        Assert.assertEquals(0, graph.getWhereUsed(graph.getRoot()).length);
+
+        int[] order = graph.getTopologicalOrder();
+        List<Integer> positions = new ArrayList<>();
+        for (int id : order) {
+            positions.add(id);
+        }
+        Assert.assertEquals(graph.getRoot(), order[0]);
+        Assert.assertTrue(positions.indexOf(graph.getId("FRAME")) < positions.indexOf(graph.getId("SUB")));
+        Assert.assertTrue(positions.indexOf(graph.getId("SUB")) < positions.indexOf(screw));
+    }
+
+    @Test
+    public void visitOccurrencesInOrderTest() {
+        ProductStructureGraph graph = ProductStructureGraph.of(product());
+        List<String> visited = new ArrayList<>();
+
+        graph.visitOccurrences((id, depth, quantity) -> {
+            visited.add(depth + " " + graph.getNumber(id) + " " + quantity);
+            return true;
+        });
+
+        Assert.assertEquals(Arrays.asList(
+                "0 PRODUCT 1.0",
+                "1 SUB 2.0", "2 SCREW 8.0", "2 PLATE 2.0",
+                "1 FRAME 1.0", "2 SUB 3.0", "3 SCREW 12.0", "3 PLATE 3.0", "2 SCREW 10.0"), visited);
+    }
+
+    @Test
+    public void skipComponentsOfOccurrenceTest() {
+        ProductStructureGraph graph = ProductStructureGraph.of(product());
+        List<String> visited = new ArrayList<>();
+
+        graph.visitOccurrences((id, depth, quantity) -> {
+            visited.add(graph.getNumber(id));
+            return !"SUB".equals(graph.getNumber(id));
+        });
+
+        Assert.assertEquals(Arrays.asList("PRODUCT", "SUB", "FRAME", "SUB", "SCREW"), visited);
+    }
+
+    @Test
+    public void completeDepthLimitedOccurrencesTest() {
+        // The first occurrence of SUB is not expanded, as returned for a depth limited structure
+        ComponentDTO root = component("PRODUCT", null,
+                component("SUB", 2.0),
+                component("FRAME", 1.0, component("SUB", 3.0, component("SCREW", 4.0))));
+
+        ProductStructureGraph graph = ProductStructureGraph.of(root);
+
+        int sub = graph.getId("SUB");
+        Assert.assertEquals(1, graph.getChildCount(sub));
+        Assert.assertEquals(4, graph.getLinkCount());
+        // Components of SUB apply to both of its occurrences
+        Assert.assertEquals(20, graph.getTotalQuantities()[graph.getId("SCREW")], DELTA);
+        Assert.assertEquals(2, graph.getOccurrenceCounts()[graph.getId("SCREW")]);
+    }
+
+    @Test
+    public void rejectCycleTest() {
+        assertCycle(component("A", null, component("B", 1.0, component("A", 1.0))));
+        assertCycle(component("A", null, component("B", 1.0, component("C", 1.0, component("B", 1.0)))));
+    }
+
+    private static void assertCycle(ComponentDTO root) {
+        try {
+            ProductStructureGraph.of(root);
+            Assert.fail("The structure has a cycle");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("Cycle"));
+        }
+    }
+
+    private static ComponentDTO component(String number, Double amount, ComponentDTO... components) {
+        ComponentDTO component = new ComponentDTO();
+        component.setNumber(number);
+        component.setVersion("A");
+        component.setIteration(1);
+        component.setAmount(amount);
+        component.setComponents(new ArrayList<>(Arrays.asList(components)));
+        return component;
+    }
+
+    private static List<String> numbers(ProductStructureGraph graph, int[] ids) {
+        List<String> numbers = new ArrayList<>();
+        for (int id : ids) {
+            numbers.add(graph.getNumber(id));
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.http.ApiOperation;
+import com.docdoku.api.http.OperationMetrics;
+import com.docdoku.api.http.RequestMetrics;
+import com.docdoku.api.models.WorkspaceDTO;
+import com.docdoku.api.services.WorkspacesApi;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class RequestMetricsTest {
+
+    @Test
+    public void operationMetricsTest() throws ApiException {
+        RequestMetrics metrics = new RequestMetrics();
+        DocDokuPLMClientFactory factory = DocDokuPLMClientFactory.builder().metrics(metrics).build();
+        ApiClient client = factory.newJWTClient(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD, TestConfig.DEBUG);
+        WorkspacesApi workspacesApi = new WorkspacesApi(client);
+
+        workspacesApi.getWorkspacesForConnectedUser();
+        workspacesApi.getWorkspacesForConnectedUser();
+
+        OperationMetrics operationMetrics = metrics.getOperationMetrics("WorkspacesApi.getWorkspacesForConnectedUser");
+        Assert.assertNotNull(operationMetrics);
+        Assert.assertEquals(2, operationMetrics.getRequestCount());
+        Assert.assertEquals(0, operationMetrics.getErrorCount());
+        Assert.assertEquals(0, operationMetrics.getInFlight());
+        Assert.assertEquals(Long.valueOf(2), operationMetrics.getStatusCounts().get(200));
+        Assert.assertTrue(operationMetrics.getResponseBytes() > 0);
+        Assert.assertTrue(operationMetrics.getMaxLatency() >= operationMetrics.getP50Latency());
+        Assert.assertTrue(metrics.toJson().contains("WorkspacesApi.getWorkspacesForConnectedUser"));
+    }
+
+    @Test
+    public void voidOperationMetricsTest() throws ApiException {
+        RequestMetrics metrics = new RequestMetrics();
+        DocDokuPLMClientFactory factory = DocDokuPLMClientFactory.builder().metrics(metrics).build();
+        ApiClient client = factory.newJWTClient(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD, TestConfig.DEBUG);
+        WorkspaceDTO workspace = TestUtils.createWorkspace(RequestMetricsTest.class.getName());
+
+        // The generated client does not read the response body of void operations
+        new WorkspacesApi(client).deleteWorkspace(workspace.getId());
+
+        OperationMetrics operationMetrics = metrics.getOperationMetrics("WorkspacesApi.deleteWorkspace");
+        Assert.assertNotNull(operationMetrics);
+        Assert.assertEquals(1, operationMetrics.getRequestCount());
+        Assert.assertEquals(0, operationMetrics.getInFlight());
+    }
+
+    @Test
+    public void emptyResponseMetricsTest() throws IOException {
+        RequestMetrics metrics = new RequestMetrics();
+        Request request = new Request.Builder().url("http://localhost/api/workspaces/ws/parts/P-001-A/checkin")
+                .tag(ApiOperation.named("PartApi.checkIn"))
+                .build();
+
+        metrics.intercept(new FakeChain(request, r -> FakeChain.response(r, 204, "")));
+        OperationMetrics operationMetrics = metrics.getOperationMetrics("PartApi.checkIn");
+        Assert.assertEquals(1, operationMetrics.getRequestCount());
+        Assert.assertEquals(0, operationMetrics.getInFlight());
+        Assert.assertEquals(Long.valueOf(1), operationMetrics.getStatusCounts().get(204));
+
+        // A body of unknown length completes once read
+        Response response = metrics.intercept(new FakeChain(request, r -> FakeChain.response(r, 200, "").newBuilder()
+                .body(ResponseBody.create(MediaType.parse("application/json"), -1, new Buffer().writeUtf8("{}")))
+                .build()));
+        Assert.assertEquals(1, metrics.getOperationMetrics("PartApi.checkIn").getInFlight());
+        response.body().string();
+        operationMetrics = metrics.getOperationMetrics("PartApi.checkIn");
+        Assert.assertEquals(0, operationMetrics.getInFlight());
+        Assert.assertEquals(2, operationMetrics.getRequestCount());
+        Assert.assertEquals(2, operationMetrics.getResponseBytes());
+    }
+
+    @Test
+    public void untaggedRequestsMetricsTest() throws IOException {
+        RequestMetrics metrics = new RequestMetrics();
+        for (String part : new String[]{"P-001-A", "P-002-A", "P-003-B"}) {
+            Request request = new Request.Builder().url("http://localhost/api/workspaces/ws/parts/" + part).build();
+            metrics.intercept(new FakeChain(request, r -> FakeChain.response(r, 204, "")));
+        }
+
+        // Path parameters do not create an operation each
+        Assert.assertEquals(1, metrics.snapshot().size());
+        Assert.assertEquals(3, metrics.getOperationMetrics(RequestMetrics.UNTAGGED).getRequestCount());
+    }
+
+}
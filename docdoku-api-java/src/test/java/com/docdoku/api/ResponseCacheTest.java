@@ -0,0 +1,68 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.http.ApiResponseCache;
+import com.docdoku.api.models.WorkspaceListDTO;
+import com.docdoku.api.services.WorkspacesApi;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class ResponseCacheTest {
+
+    @Test
+    public void cachedReadsTest() throws ApiException {
+        ApiResponseCache cache = ApiResponseCache.builder().maxEntries(10).build();
+        ApiClient client = DocDokuPLMClientFactory.createJWTClient(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD, TestConfig.DEBUG);
+        cache.install(client);
+        WorkspacesApi workspacesApi = new WorkspacesApi(client);
+
+        WorkspaceListDTO first = workspacesApi.getWorkspacesForConnectedUser();
+        WorkspaceListDTO second = workspacesApi.getWorkspacesForConnectedUser();
+
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(2, cache.getRequestCount());
+        // The first read fills the cache, the second one is served from it, revalidated or not
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount() + cache.getRevalidatedHitCount());
+    }
+
+    @Test
+    public void evictAllTest() throws ApiException, IOException {
+        ApiResponseCache cache = ApiResponseCache.builder().build();
+        ApiClient client = DocDokuPLMClientFactory.createJWTClient(TestConfig.URL, TestConfig.LOGIN, TestConfig.PASSWORD, TestConfig.DEBUG);
+        cache.install(client);
+        WorkspacesApi workspacesApi = new WorkspacesApi(client);
+
+        workspacesApi.getWorkspacesForConnectedUser();
+        cache.evictAll();
+        Assert.assertEquals(0, cache.getEntryCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.http.ApiOperation;
+import com.docdoku.api.services.PartBinaryApi;
+import com.docdoku.api.transfer.DownloadedFile;
+import com.docdoku.api.transfer.ResumableDownloader;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ResumableDownloaderTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = "\"v1\"";
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final Deque<FakeChain.Server> responses = new ArrayDeque<>();
+    private final List<Request> requests = new ArrayList<>();
+    private final ResumableDownloader downloader = ResumableDownloader.builder()
+            .maxAttempts(3)
+            .backoff(0, 0, TimeUnit.MILLISECONDS)
+            .build();
+
+    private File directory;
+    private File destination;
+    private File partial;
+    private File journal;
+    private StreamingApiClient client;
+
+    @Before
+    public void createClient() throws IOException {
+        directory = Files.createTempDirectory("docdoku-download").toFile();
+        destination = new File(directory, "part.stp");
+        partial = new File(directory, "part.stp.part");
+        journal = new File(directory, "part.stp.part.json");
+        client = new StreamingApiClient();
+        client.setBasePath("http://localhost/api");
+        // Answers the download requests in place of the server
+        client.getHttpClient().interceptors().add(chain -> {
+            requests.add(chain.request());
+            return responses.removeFirst().serve(chain.request());
+        });
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void downloadWholeFileTest() throws ApiException, IOException {
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        DownloadedFile downloaded = download();
+
+        Request request = requests.get(0);
+        Assert.assertEquals("identity", request.header("Accept-Encoding"));
+        Assert.assertNull(request.header("Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+        assertDigests(CONTENT, downloaded);
+        Assert.assertFalse(partial.exists());
+        Assert.assertFalse(journal.exists());
+    }
+
+    @Test
+    public void tagDownloadRequestTest() throws ApiException, IOException {
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        download();
+
+        // Found on the call stack of the generated service
+        Assert.assertEquals("PartBinaryApi.downloadPartFile", ApiOperation.of(requests.get(0)));
+    }
+
+    @Test
+    public void resumeInterruptedTransferTest() throws ApiException, IOException {
+        responses.add(r -> interrupted(r, CONTENT, 4));
+        responses.add(r -> file(r, 206, CONTENT.substring(4), "ETag", ETAG, "Content-Range", "bytes 4-9/10"));
+
+        DownloadedFile downloaded = download();
+
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals("bytes=4-", requests.get(1).header("Range"));
+        Assert.assertEquals(ETAG, requests.get(1).header("If-Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+        // Digests cover the bytes received before the interruption
+        assertDigests(CONTENT, downloaded);
+    }
+
+    @Test
+    public void resumePartialFileOfPreviousRunTest() throws ApiException, IOException {
+        writePartial("0123", "{\"lastModified\":\"Mon, 03 Jul 2017 10:00:00 GMT\",\"length\":10}");
+        responses.add(r -> file(r, 206, "456789", "Content-Range", "bytes 4-9/10"));
+
+        DownloadedFile downloaded = download();
+
+        Assert.assertEquals("bytes=4-", requests.get(0).header("Range"));
+        Assert.assertEquals("Mon, 03 Jul 2017 10:00:00 GMT", requests.get(0).header("If-Range"));
+        assertDigests(CONTENT, downloaded);
+    }
+
+    @Test
+    public void restartOnMismatchedContentRangeTest() throws ApiException, IOException {
+        writePartial("0123", "{\"etag\":\"\\\"v1\\\"\",\"length\":10}");
+        responses.add(r -> file(r, 206, CONTENT, "Content-Range", "bytes 0-9/10"));
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        DownloadedFile downloaded = download();
+
+        Assert.assertEquals(2, requests.size());
+        Assert.assertNull(requests.get(1).header("Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+        assertDigests(CONTENT, downloaded);
+    }
+
+    @Test
+    public void replacePartialWithWholeFileTest() throws ApiException, IOException {
+        writePartial("abcd", "{\"etag\":\"\\\"v0\\\"\",\"length\":10}");
+        // The remote file changed, If-Range makes the server send it whole
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        DownloadedFile downloaded = download();
+
+        Assert.assertEquals("\"v0\"", requests.get(0).header("If-Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+        assertDigests(CONTENT, downloaded);
+    }
+
+    @Test
+    public void restartOnRangeNotSatisfiableTest() throws ApiException, IOException {
+        writePartial("0123456789abc", "{\"etag\":\"\\\"v1\\\"\",\"length\":13}");
+        responses.add(r -> file(r, 416, ""));
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        download();
+
+        Assert.assertEquals("bytes=13-", requests.get(0).header("Range"));
+        Assert.assertNull(requests.get(1).header("Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+    }
+
+    @Test
+    public void ignoreCorruptedJournalTest() throws ApiException, IOException {
+        writePartial("0123", "{\"etag\":");
+        responses.add(r -> file(r, 200, CONTENT, "ETag", ETAG));
+
+        download();
+
+        // Without validators the partial file cannot be trusted
+        Assert.assertNull(requests.get(0).header("Range"));
+        Assert.assertEquals(CONTENT, read(destination));
+    }
+
+    @Test
+    public void rejectTruncatedFileTest() throws IOException {
+        responses.add(r -> file(r, 200, CONTENT).newBuilder()
+                .body(ResponseBody.create(OCTET_STREAM, 20, new Buffer().writeUtf8(CONTENT)))
+                .build());
+        try {
+            download();
+            Assert.fail("The file is shorter than announced");
+        } catch (ApiException e) {
+            Assert.assertTrue(e.getMessage().contains("instead of 20"));
+        }
+        Assert.assertFalse(destination.exists());
+        Assert.assertFalse(partial.exists());
+        Assert.assertFalse(journal.exists());
+    }
+
+    @Test
+    public void checkDigestHeaderTest() throws ApiException, IOException {
+        String sha256 = Base64.getEncoder().encodeToString(digest("SHA-256", CONTENT));
+        responses.add(r -> file(r, 200, CONTENT, "Digest", "sha-256=" + sha256));
+        download();
+        Assert.assertEquals(CONTENT, read(destination));
+
+        Assert.assertTrue(destination.delete());
+        String otherMd5 = Base64.getEncoder().encodeToString(digest("MD5", "other"));
+        responses.add(r -> file(r, 200, CONTENT, "Digest", "md5=" + otherMd5));
+        try {
+            download();
+            Assert.fail("The file does not match its digest");
+        } catch (ApiException e) {
+            Assert.assertTrue(e.getMessage().contains("digest"));
+        }
+        Assert.assertFalse(destination.exists());
+        Assert.assertFalse(partial.exists());
+    }
+
+    private DownloadedFile download() throws ApiException {
+        PartBinaryApi partBinaryApi = new PartBinaryApi(client);
+        return downloader.download(client, destination, () -> partBinaryApi.downloadPartFile("ws", "P-001", "A", 1,
+                "nativecad", "part.stp", null, null, null, null, null, null));
+    }
+
+    private void writePartial(String content, String journalContent) throws IOException {
+        Files.write(partial.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.write(journal.toPath(), journalContent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param headers : alternate header names and values
+     */
+    private static Response file(Request request, int code, String content, String... headers) {
+        Response.Builder builder = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Status " + code)
+                .header("Content-Type", OCTET_STREAM.toString())
+                .body(ResponseBody.create(OCTET_STREAM, content));
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Whole file response whose connection breaks after some bytes
+     */
+    private static Response interrupted(Request request, String content, int sent) {
+        Buffer buffer = new Buffer().writeUtf8(content.substring(0, sent));
+        Source source = new Source() {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                if (buffer.size() == 0) {
+                    throw new IOException("Connection reset");
+                }
+                return buffer.read(sink, byteCount);
+            }
+
+            @Override
+            public Timeout timeout() {
+                return Timeout.NONE;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return file(request, 200, content, "ETag", ETAG).newBuilder()
+                .body(ResponseBody.create(OCTET_STREAM, content.length(), Okio.buffer(source)))
+                .build();
+    }
+
+    private static void assertDigests(String content, DownloadedFile downloaded) {
+        Assert.assertEquals(content.length(), downloaded.getLength());
+        Assert.assertArrayEquals(digest("MD5", content), downloaded.getMd5());
+        Assert.assertArrayEquals(digest("SHA-256", content), downloaded.getSha256());
+    }
+
+    private static byte[] digest(String algorithm, String content) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.http.ApiOperation;
+import com.docdoku.api.http.RetryInterceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class RetryInterceptorTest {
+
+    private static final String URL = "http://localhost/api/workspaces/ws/parts/P-001-A/checkin";
+
+    private RetryInterceptor retry = RetryInterceptor.builder()
+            .backoff(1, 5, TimeUnit.MILLISECONDS)
+            .idempotentOperations("AccountsApi.updateAccount")
+            .build();
+
+    @Test
+    public void retryGetTest() throws IOException {
+        Request request = new Request.Builder().url(URL).get().build();
+        FakeChain chain = failingTwice(request);
+        Response response = retry.intercept(chain);
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals(3, chain.getReceived().size());
+        Assert.assertEquals(2, retry.getRetryCount());
+    }
+
+    @Test
+    public void noRetryOfSentWriteTest() throws IOException {
+        Request request = put(ApiOperation.named("PartApi.checkIn"));
+        FakeChain chain = failingTwice(request);
+        Assert.assertEquals(503, retry.intercept(chain).code());
+        Assert.assertEquals(1, chain.getReceived().size());
+
+        FakeChain timeout = new FakeChain(request, r -> {
+            throw new SocketTimeoutException();
+        });
+        try {
+            retry.intercept(timeout);
+            Assert.fail("A write timing out must not be sent again");
+        } catch (SocketTimeoutException e) {
+            Assert.assertEquals(1, timeout.getReceived().size());
+        }
+
+        // Untagged writes are not retried either
+        FakeChain untagged = failingTwice(put(null));
+        Assert.assertEquals(503, retry.intercept(untagged).code());
+        Assert.assertEquals(1, untagged.getReceived().size());
+    }
+
+    @Test
+    public void retryDeclaredOperationTest() throws IOException {
+        FakeChain chain = failingTwice(put(ApiOperation.named("AccountsApi.updateAccount")));
+        Assert.assertEquals(200, retry.intercept(chain).code());
+        Assert.assertEquals(3, chain.getReceived().size());
+    }
+
+    @Test
+    public void retryWriteNotSentTest() throws IOException {
+        int[] attempts = {0};
+        FakeChain chain = new FakeChain(put(ApiOperation.named("PartApi.checkIn")), r -> {
+            if (attempts[0]++ == 0) {
+                throw new ConnectException();
+            }
+            return FakeChain.response(r, 200, "");
+        });
+        Assert.assertEquals(200, retry.intercept(chain).code());
+        Assert.assertEquals(2, chain.getReceived().size());
+    }
+
+    @Test
+    public void backoffTest() throws IOException {
+        RetryInterceptor slow = RetryInterceptor.builder()
+                .maxRetries(2)
+                .backoff(100, 200, TimeUnit.MILLISECONDS)
+                .build();
+        Request request = new Request.Builder().url(URL).get().build();
+        FakeChain chain = new FakeChain(request, r -> FakeChain.response(r, 503, ""));
+
+        long start = System.nanoTime();
+        Assert.assertEquals(503, slow.intercept(chain).code());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Full jitter: each wait is at most the backoff ceiling, 100 then 200 ms
+        Assert.assertEquals(3, chain.getReceived().size());
+        Assert.assertTrue("Waited " + elapsed + " ms", elapsed < 300 + 200);
+    }
+
+    @Test
+    public void retryAfterTest() throws IOException {
+        RetryInterceptor limited = RetryInterceptor.builder()
+                .backoff(1, 5, TimeUnit.MILLISECONDS)
+                .maxRetryAfter(1, TimeUnit.SECONDS)
+                .build();
+        Request request = new Request.Builder().url(URL).get().build();
+
+        FakeChain tooLong = new FakeChain(request, r -> FakeChain.response(r, 429, "", "Retry-After", "60"));
+        Assert.assertEquals(429, limited.intercept(tooLong).code());
+        Assert.assertEquals(1, tooLong.getReceived().size());
+
+        int[] attempts = {0};
+        FakeChain now = new FakeChain(request, r -> attempts[0]++ == 0
+                ? FakeChain.response(r, 429, "", "Retry-After", "0")
+                : FakeChain.response(r, 200, ""));
+        Assert.assertEquals(200, limited.intercept(now).code());
+        Assert.assertEquals(2, now.getReceived().size());
+    }
+
+    @Test
+    public void budgetTest() throws IOException {
+        RetryInterceptor bounded = RetryInterceptor.builder()
+                .backoff(1, 5, TimeUnit.MILLISECONDS)
+                .budget(2, 0)
+                .build();
+        Request request = new Request.Builder().url(URL).get().build();
+        FakeChain chain = new FakeChain(request, r -> FakeChain.response(r, 503, ""));
+
+        Assert.assertEquals(503, bounded.intercept(chain).code());
+        Assert.assertEquals(3, chain.getReceived().size());
+        Assert.assertEquals(1, bounded.getBudgetExhaustedCount());
+        Assert.assertEquals(0, bounded.getAvailableBudget(), 0);
+    }
+
+    private static Request put(ApiOperation operation) {
+        return new Request.Builder().url(URL)
+                .put(RequestBody.create(MediaType.parse("application/json"), "{}"))
+                .tag(operation)
+                .build();
+    }
+
+    private static FakeChain failingTwice(Request request) {
+        int[] attempts = {0};
+        return new FakeChain(request, r -> attempts[0]++ < 2
+                ? FakeChain.response(r, 503, "")
+                : FakeChain.response(r, 200, ""));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.DocumentRevisionDTO;
+import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.models.WorkspaceDTO;
+import com.docdoku.api.services.DocumentsApi;
+import com.docdoku.api.services.PartsApi;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class StreamingApiTest {
+
+    private static final int ITEMS = 10;
+
+    private ApiClient client = TestConfig.REGULAR_USER_CLIENT;
+    private static WorkspaceDTO workspace;
+
+    @BeforeClass
+    public static void initWorkspace() throws ApiException {
+        workspace = TestUtils.createWorkspace(StreamingApiTest.class.getName());
+        for (int i = 0; i < ITEMS; i++) {
+            TestUtils.createPart(workspace.getId(), "GeneratedPart");
+            TestUtils.createDocument(workspace.getId(), "GeneratedDocument");
+        }
+    }
+
+    @AfterClass
+    public static void deleteWorkspace() throws ApiException {
+        TestUtils.deleteWorkspace(workspace);
+    }
+
+    @Test
+    public void streamPartRevisionsTest() throws ApiException {
+        Assert.assertTrue(client instanceof StreamingApiClient);
+        PartsApi partsApi = new PartsApi(client);
+
+        List<PartRevisionDTO> streamed = new ArrayList<>();
+        StreamingApiClient.forEach(client, PartRevisionDTO.class,
+                () -> partsApi.getPartRevisions(workspace.getId(), 0, ITEMS * 2), streamed::add);
+
+        Assert.assertEquals(partsApi.getPartRevisions(workspace.getId(), 0, ITEMS * 2), streamed);
+    }
+
+    @Test
+    public void streamDocumentRevisionsTest() throws ApiException {
+        DocumentsApi documentsApi = new DocumentsApi(client);
+
+        List<DocumentRevisionDTO> streamed = new ArrayList<>();
+        StreamingApiClient.forEach(client, DocumentRevisionDTO.class,
+                () -> documentsApi.getDocumentsInWorkspace(workspace.getId(), 0, ITEMS * 2), streamed::add);
+
+        Assert.assertEquals(ITEMS, streamed.size());
+    }
+
+}
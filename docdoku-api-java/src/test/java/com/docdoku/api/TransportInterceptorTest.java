@@ -0,0 +1,144 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.transport.HttpTransport;
+import com.docdoku.api.transport.TransportInterceptor;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class TransportInterceptorTest {
+
+    private static final String URL = "http://localhost/api/workspaces/ws/parts";
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final List<Request> sent = new ArrayList<>();
+
+    private final HttpTransport transport = request -> {
+        calls.add("transport");
+        sent.add(request);
+        return FakeChain.response(request, 200, "{}");
+    };
+
+    @Test
+    public void runInterceptorsAfterItThenNetworkOnesTest() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        TransportInterceptor transportInterceptor = new TransportInterceptor(client, transport);
+        client.interceptors().add(recording("before"));
+        client.interceptors().add(transportInterceptor);
+        client.interceptors().add(recording("jwt"));
+        client.interceptors().add(recording("cache"));
+        client.networkInterceptors().add(recording("network"));
+
+        Request request = new Request.Builder().url(URL).build();
+        FakeChain chain = new FakeChain(request, r -> {
+            throw new AssertionError("The OkHttp engine must not be reached");
+        });
+        Response response = transportInterceptor.intercept(chain);
+
+        // Interceptors before the transport one are run by OkHttp, not again by the transport chain
+        Assert.assertEquals(Arrays.asList("jwt", "cache", "network", "transport"), calls);
+        Assert.assertEquals(200, response.code());
+        Assert.assertTrue(chain.getReceived().isEmpty());
+        Assert.assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void sendRequestAsRewrittenByInterceptorsTest() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        TransportInterceptor transportInterceptor = new TransportInterceptor(client, transport);
+        client.interceptors().add(transportInterceptor);
+        client.interceptors().add(chain -> chain.proceed(chain.request().newBuilder().header("Authorization", "Bearer token").build()));
+        client.networkInterceptors().add(chain -> {
+            Assert.assertEquals("Bearer token", chain.request().header("Authorization"));
+            return chain.proceed(chain.request().newBuilder().header("X-Network", "true").build());
+        });
+
+        transportInterceptor.intercept(new FakeChain(new Request.Builder().url(URL).build(), null));
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("Bearer token", sent.get(0).header("Authorization"));
+        Assert.assertEquals("true", sent.get(0).header("X-Network"));
+    }
+
+    @Test
+    public void skipTransportWhenAnInterceptorAnswersTest() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        TransportInterceptor transportInterceptor = new TransportInterceptor(client, transport);
+        client.interceptors().add(transportInterceptor);
+        // A cache hit answers without proceeding
+        client.interceptors().add(chain -> {
+            calls.add("cache");
+            return FakeChain.response(chain.request(), 200, "cached");
+        });
+        client.networkInterceptors().add(recording("network"));
+
+        Response response = transportInterceptor.intercept(new FakeChain(new Request.Builder().url(URL).build(), null));
+
+        Assert.assertEquals("cached", response.body().string());
+        Assert.assertEquals(Collections.singletonList("cache"), calls);
+        Assert.assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void sendEachAttemptOfARetryingInterceptorTest() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        TransportInterceptor transportInterceptor = new TransportInterceptor(client, transport);
+        client.interceptors().add(transportInterceptor);
+        client.interceptors().add(chain -> {
+            chain.proceed(chain.request()).body().close();
+            return chain.proceed(chain.request());
+        });
+        client.networkInterceptors().add(recording("network"));
+
+        transportInterceptor.intercept(new FakeChain(new Request.Builder().url(URL).build(), null));
+
+        // Each proceed runs the rest of the chain once
+        Assert.assertEquals(Arrays.asList("network", "transport", "network", "transport"), calls);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failWhenNotInClientInterceptorsTest() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        TransportInterceptor transportInterceptor = new TransportInterceptor(client, transport);
+        transportInterceptor.intercept(new FakeChain(new Request.Builder().url(URL).build(), null));
+    }
+
+    private Interceptor recording(String name) {
+        return chain -> {
+            calls.add(name);
+            return chain.proceed(chain.request());
+        };
+    }
+}
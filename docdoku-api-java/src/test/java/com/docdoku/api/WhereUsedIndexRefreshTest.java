@@ -0,0 +1,161 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.ComponentDTO;
+import com.docdoku.api.models.ConfigurationItemDTO;
+import com.docdoku.api.structure.WhereUsedIndex;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class WhereUsedIndexRefreshTest {
+
+    private static final String WORKSPACE = "ws";
+
+    private ApiClient client;
+    private WhereUsedIndex index;
+    private List<String> productIds;
+    // Called with the product id and the number of its structure requests so far
+    private StructureServer structures;
+
+    private interface StructureServer {
+        ComponentDTO serve(String productId, int count) throws ApiException;
+    }
+
+    @Before
+    public void createIndex() {
+        client = new ApiClient();
+        client.setBasePath("http://localhost/api");
+        AtomicInteger count = new AtomicInteger();
+        // Answers in place of the server
+        client.getHttpClient().interceptors().add(chain -> {
+            Request request = chain.request();
+            String path = request.httpUrl().encodedPath();
+            try {
+                if (path.endsWith("/products/getConfigurationItems/" + WORKSPACE)) {
+                    return json(request, products(productIds));
+                }
+                String productId = path.split("/")[5];
+                return json(request, structures.serve(productId, count.incrementAndGet()));
+            } catch (ApiException e) {
+                throw new IOException(e);
+            }
+        });
+        index = WhereUsedIndex.builder(client, WORKSPACE).build();
+    }
+
+    @Test
+    public void keepProductIndexedDuringRefreshTest() throws ApiException, InterruptedException {
+        productIds = Collections.singletonList("FIRST");
+        structures = (productId, count) -> {
+            if (count == 1) {
+                // Product created and indexed once the products were listed
+                index.refresh("SECOND");
+            }
+            return component(productId + "-ROOT", component("LEAF"));
+        };
+
+        Map<String, ApiException> failures = index.refresh();
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(new ArrayList<>(Arrays.asList("FIRST", "SECOND")), new ArrayList<>(index.getProductIds()));
+        Assert.assertEquals(2, index.getImpactedProducts("LEAF").size());
+
+        // No longer listed
+        index.refresh();
+        Assert.assertEquals(Collections.singleton("FIRST"), index.getProductIds());
+        Assert.assertEquals(Collections.singleton("FIRST-ROOT"), index.getParents("LEAF"));
+    }
+
+    @Test
+    public void dropStaleStructureTest() throws ApiException, InterruptedException {
+        productIds = Collections.singletonList("FIRST");
+        structures = (productId, count) -> {
+            if (count == 1) {
+                // The structure is changed and refreshed while the old one is fetched
+                index.refresh(productId);
+                return component("ROOT", component("OLD"));
+            }
+            return component("ROOT", component("NEW"));
+        };
+
+        index.refresh();
+        Assert.assertEquals(Collections.singleton("ROOT"), index.getParents("NEW"));
+        Assert.assertTrue(index.getParents("OLD").isEmpty());
+    }
+
+    @Test
+    public void dropStructureOfRemovedProductTest() throws ApiException {
+        structures = (productId, count) -> {
+            if (count == 1) {
+                index.remove(productId);
+            }
+            return component("ROOT", component("LEAF"));
+        };
+
+        // Fetched before the removal
+        index.refresh("FIRST");
+        Assert.assertTrue(index.getProductIds().isEmpty());
+        Assert.assertTrue(index.getParents("LEAF").isEmpty());
+
+        index.refresh("FIRST");
+        Assert.assertEquals(Collections.singleton("FIRST"), index.getProductIds());
+    }
+
+    private Response json(Request request, Object body) {
+        return FakeChain.response(request, 200, client.getJSON().serialize(body), "Content-Type", "application/json");
+    }
+
+    private static List<ConfigurationItemDTO> products(List<String> ids) {
+        List<ConfigurationItemDTO> products = new ArrayList<>();
+        for (String id : ids) {
+            ConfigurationItemDTO product = new ConfigurationItemDTO();
+            product.setId(id);
+            product.setWorkspaceId(WORKSPACE);
+            products.add(product);
+        }
+        return products;
+    }
+
+    private static ComponentDTO component(String number, ComponentDTO... components) {
+        ComponentDTO component = new ComponentDTO();
+        component.setNumber(number);
+        component.setVersion("A");
+        component.setIteration(1);
+        component.setComponents(new ArrayList<>(Arrays.asList(components)));
+        return component;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.api;
+
+import com.docdoku.api.client.ApiException;
+import com.docdoku.api.models.*;
+import com.docdoku.api.models.utils.LastIterationHelper;
+import com.docdoku.api.services.PartApi;
+import com.docdoku.api.services.ProductsApi;
+import com.docdoku.api.structure.WhereUsedIndex;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class WhereUsedIndexTest {
+
+    private static final PartApi partApi = new PartApi(TestConfig.REGULAR_USER_CLIENT);
+    private static final ProductsApi productsApi = new ProductsApi(TestConfig.REGULAR_USER_CLIENT);
+
+    private static WorkspaceDTO workspace;
+    private static PartRevisionDTO leaf;
+    private static PartRevisionDTO subAssembly;
+    private static PartRevisionDTO firstRoot;
+    private static PartRevisionDTO secondRoot;
+    private static ConfigurationItemDTO firstProduct;
+    private static ConfigurationItemDTO secondProduct;
+
+    @BeforeClass
+    public static void initProducts() throws ApiException {
+        workspace = TestUtils.createWorkspace(WhereUsedIndexTest.class.getName());
+        leaf = TestUtils.createPart(workspace.getId(), "Leaf");
+        subAssembly = TestUtils.createPart(workspace.getId(), "Sub assembly");
+        firstRoot = TestUtils.createPart(workspace.getId(), "First root");
+        secondRoot = TestUtils.createPart(workspace.getId(), "Second root");
+
+        checkIn(leaf, Collections.emptyList());
+        checkIn(subAssembly, Collections.singletonList(leaf));
+        checkIn(firstRoot, Collections.singletonList(subAssembly));
+        checkIn(secondRoot, Arrays.asList(subAssembly, leaf));
+
+        firstProduct = createProduct(firstRoot);
+        secondProduct = createProduct(secondRoot);
+    }
+
+    @AfterClass
+    public static void deleteWorkspace() throws ApiException {
+        TestUtils.deleteWorkspace(workspace);
+    }
+
+    @Test
+    public void whereUsedTest() throws ApiException, InterruptedException {
+        WhereUsedIndex index = WhereUsedIndex.builder(TestConfig.REGULAR_USER_CLIENT, workspace.getId()).build();
+        Map<String, ApiException> failures = index.refresh();
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(2, index.getProductIds().size());
+
+        Assert.assertEquals(2, index.getParents(leaf.getNumber()).size());
+        Assert.assertTrue(index.getParents(leaf.getNumber()).contains(subAssembly.getNumber()));
+        Assert.assertTrue(index.getParents(leaf.getNumber()).contains(secondRoot.getNumber()));
+        Assert.assertEquals(3, index.getWhereUsed(leaf.getNumber()).size());
+        Assert.assertTrue(index.getWhereUsed(leaf.getNumber()).contains(firstRoot.getNumber()));
+        Assert.assertEquals(2, index.getImpactedProducts(subAssembly.getNumber()).size());
+        Assert.assertTrue(index.getWhereUsed(firstRoot.getNumber()).isEmpty());
+
+        productsApi.deleteConfigurationItem(workspace.getId(), firstProduct.getId());
+        index.remove(firstProduct.getId());
+        index.refresh(secondProduct.getId());
+        Assert.assertFalse(index.getWhereUsed(leaf.getNumber()).contains(firstRoot.getNumber()));
+        Assert.assertEquals(Collections.singleton(secondProduct.getId()), index.getImpactedProducts(leaf.getNumber()));
+    }
+
+    private static void checkIn(PartRevisionDTO part, List<PartRevisionDTO> components) throws ApiException {
+        PartIterationDTO iteration = LastIterationHelper.getLastIteration(part);
+        List<PartUsageLinkDTO> links = new ArrayList<>();
+        for (PartRevisionDTO component : components) {
+            ComponentDTO componentDTO = new ComponentDTO();
+            componentDTO.setNumber(component.getNumber());
+            componentDTO.setAmount(1.0);
+            PartUsageLinkDTO link = new PartUsageLinkDTO();
+            link.setComponent(componentDTO);
+            link.setCadInstances(Collections.singletonList(new CADInstanceDTO()));
+            links.add(link);
+        }
+        iteration.setComponents(links);
+        partApi.updatePartIteration(part.getWorkspaceId(), part.getNumber(), part.getVersion(), iteration.getIteration(), iteration);
+        partApi.checkIn(part.getWorkspaceId(), part.getNumber(), part.getVersion());
+    }
+
+    private static ConfigurationItemDTO createProduct(PartRevisionDTO root) throws ApiException {
+        ConfigurationItemDTO product = new ConfigurationItemDTO();
+        product.setId(TestUtils.randomString());
+        product.setDesignItemNumber(root.getNumber());
+        product.setWorkspaceId(workspace.getId());
+        return productsApi.createConfigurationItem(workspace.getId(), product);
+    }
+}
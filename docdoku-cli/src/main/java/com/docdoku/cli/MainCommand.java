@@ -86,6 +86,10 @@ public class MainCommand {
                 cl = new BaselineListCommand();
                 break;
 
+            case "cache":
+                cl = new CacheCommand();
+                break;
+
             case "conversion":
             case "cv":
                 cl = new ConversionCommand();
@@ -22,6 +22,8 @@ package com.docdoku.cli.commands;
 
 import com.docdoku.api.DocDokuPLMClientFactory;
 import com.docdoku.api.client.ApiClient;
+import com.docdoku.api.http.PhaseTimer;
+import com.docdoku.api.http.PhaseTimings;
 import com.docdoku.cli.helpers.AccountsManager;
 import com.docdoku.cli.helpers.CliOutput;
 import com.docdoku.cli.helpers.LangHelper;
@@ -31,6 +33,8 @@ import java.io.Console;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * @author Florent Garin
@@ -56,6 +60,9 @@ public abstract class BaseCommandLine extends AbstractCommandLine {
     @Option(name = "-dbg", aliases = "--debug", usage = "enable debug mode")
     protected boolean debug = false;
 
+    @Option(name = "-T", aliases = "--timings", usage = "print the phase timings (lookup, connect, tls, time to first byte, transfer) of the server calls")
+    protected boolean timings = false;
+
     protected ApiClient client;
 
     private void promptForUser() {
@@ -93,9 +100,24 @@ public abstract class BaseCommandLine extends AbstractCommandLine {
 
         String apiBasePath = getServerURL().toString() + "/api";
 
-        client = DocDokuPLMClientFactory.createJWTClient(apiBasePath, user, password);
-
-        execImpl();
+        if (!timings) {
+            client = DocDokuPLMClientFactory.createJWTClient(apiBasePath, user, password);
+            execImpl();
+            return;
+        }
+        // Timer given to the factory so that the login call is timed too
+        Queue<PhaseTimings> callTimings = new ConcurrentLinkedQueue<>();
+        client = DocDokuPLMClientFactory.builder()
+                .phaseTimer(PhaseTimer.builder().listener(callTimings::add).build())
+                .build()
+                .newJWTClient(apiBasePath, user, password);
+        try {
+            execImpl();
+        } finally {
+            for (PhaseTimings callTiming : callTimings) {
+                output.printInfo(callTiming.toString());
+            }
+        }
 
     }
 
@@ -0,0 +1,64 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.commands.common;
+
+import com.docdoku.cli.commands.AbstractCommandLine;
+import com.docdoku.cli.helpers.BlobCache;
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+
+/**
+ * Inspect and prune the local cache of downloaded files
+ */
+public class CacheCommand extends AbstractCommandLine {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Option(name = "-m", aliases = "--max-size", metaVar = "<megabytes>", usage = "set the maximum size of the cache and evict the least recently used files beyond it")
+    private Long maxSize;
+
+    @Option(name = "-c", aliases = "--clear", usage = "remove all the files from the cache")
+    private boolean clear;
+
+    @Override
+    public void execImpl() throws Exception {
+        BlobCache cache = BlobCache.getDefault();
+
+        if (clear) {
+            int evicted = cache.clear();
+            output.printInfo(langHelper.getLocalizedMessage("CacheFilesEvicted") + " : " + evicted);
+        } else if (maxSize != null) {
+            long before = cache.getBlobCount();
+            cache.setMaxSize(maxSize * MEGABYTE);
+            output.printInfo(langHelper.getLocalizedMessage("CacheFilesEvicted") + " : " + (before - cache.getBlobCount()));
+        }
+
+        output.printInfo(langHelper.getLocalizedMessage("CacheDirectory") + " : " + cache.getDirectory().getAbsolutePath());
+        output.printInfo(langHelper.getLocalizedMessage("CacheFiles") + " : " + cache.getBlobCount() + " (" + cache.getRefCount() + " " + langHelper.getLocalizedMessage("CacheReferences") + ")");
+        output.printInfo(langHelper.getLocalizedMessage("CacheSize") + " : " + cache.getSize() / MEGABYTE + " / " + cache.getMaxSize() / MEGABYTE + " MB");
+    }
+
+    @Override
+    public String getDescription() throws IOException {
+        return langHelper.getLocalizedMessage("CacheCommandDescription");
+    }
+}
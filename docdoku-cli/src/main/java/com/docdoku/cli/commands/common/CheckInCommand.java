@@ -8,11 +8,15 @@ import com.docdoku.api.services.PartApi;
 import com.docdoku.cli.commands.BaseCommandLine;
 import com.docdoku.cli.helpers.FileHelper;
 import com.docdoku.cli.helpers.MetaDirectoryManager;
+import com.docdoku.cli.helpers.ParallelUploader;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class CheckInCommand extends BaseCommandLine {
     @Option(
@@ -70,6 +74,14 @@ public class CheckInCommand extends BaseCommandLine {
     )
     private boolean noUpload;
 
+    @Option(
+            name = "-j",
+            aliases = "--jobs",
+            metaVar = "<jobs>",
+            usage = "number of document files uploaded in parallel (default is 4)"
+    )
+    private int jobs = 4;
+
     @Option(
             metaVar = "<message>",
             name = "-m",
@@ -113,7 +125,7 @@ public class CheckInCommand extends BaseCommandLine {
         path=path.getParentFile();
     }
 
-    private void processPart() {
+    private void processPart() throws IOException {
         try {
             PartApi partApi = new PartApi(client);
 
@@ -137,9 +149,18 @@ public class CheckInCommand extends BaseCommandLine {
 
                     String fileName = nativeCADFile.getName();
                     File localFile = new File(path, fileName);
+                    MetaDirectoryManager meta = new MetaDirectoryManager(path);
+                    String target = FileHelper.partTarget(workspace, id, revision, pi.getIteration());
                     if (localFile.exists()) {
-                        FileHelper fh = new FileHelper(client, output, langHelper);
-                        fh.uploadPartFile(workspace, id, revision, pi.getIteration(), path);
+                        FileHelper.UploadCheck check = FileHelper.checkUpload(meta, localFile, target);
+                        if (check.isUnchanged()) {
+                            output.printInfo(langHelper.getLocalizedMessage("UnchangedFileSkipped") + " : " + fileName);
+                        } else {
+                            FileHelper fh = new FileHelper(client, output, langHelper);
+                            if (fh.uploadPartFile(workspace, id, revision, pi.getIteration(), localFile)) {
+                                FileHelper.saveUploadMetadata(meta, check);
+                            }
+                        }
                     }
                 }
             }
@@ -158,7 +179,7 @@ public class CheckInCommand extends BaseCommandLine {
         }
     }
 
-    private void processDocument() {
+    private void processDocument() throws IOException, InterruptedException {
         try {
             DocumentApi documentApi = new DocumentApi(client);
             DocumentRevisionDTO dr = documentApi.getDocumentRevision(workspace, id, revision);
@@ -171,14 +192,34 @@ public class CheckInCommand extends BaseCommandLine {
             docIPK.setIteration(di.getIteration());
 
             if (!noUpload && !di.getAttachedFiles().isEmpty()) {
-
+                MetaDirectoryManager meta = new MetaDirectoryManager(path);
+                String target = FileHelper.documentTarget(workspace, id, revision, di.getIteration());
+                List<File> localFiles = new ArrayList<>();
+                List<FileHelper.UploadCheck> checks = new ArrayList<>();
                 for (BinaryResourceDTO binaryResourceDTO : di.getAttachedFiles()) {
-                    String fileName = binaryResourceDTO.getName();
-                    File localFile = new File(path, fileName);
+                    File localFile = new File(path, binaryResourceDTO.getName());
                     if (localFile.exists()) {
-                        FileHelper fh = new FileHelper(client, output, langHelper);
-
-                        fh.uploadDocumentFile(workspace, id, revision, di.getIteration(), path);
+                        FileHelper.UploadCheck check = FileHelper.checkUpload(meta, localFile, target);
+                        if (check.isUnchanged()) {
+                            output.printInfo(langHelper.getLocalizedMessage("UnchangedFileSkipped") + " : " + localFile.getName());
+                        } else {
+                            localFiles.add(localFile);
+                            checks.add(check);
+                        }
+                    }
+                }
+                if (!localFiles.isEmpty()) {
+                    FileHelper fh = new FileHelper(client, output, langHelper);
+                    Map<File, Exception> failures = fh.uploadDocumentFiles(workspace, id, revision, di.getIteration(), localFiles, jobs);
+                    for (FileHelper.UploadCheck check : checks) {
+                        if (!failures.containsKey(check.getFile())) {
+                            FileHelper.saveUploadMetadata(meta, check);
+                        }
+                    }
+                    if (!failures.isEmpty()) {
+                        ParallelUploader.printFailures(failures, output, langHelper.getLocalizedMessage("FailedUploads"));
+                        output.printInfo(langHelper.getLocalizedMessage("DocumentCheckInFailed"));
+                        return;
                     }
                 }
             }
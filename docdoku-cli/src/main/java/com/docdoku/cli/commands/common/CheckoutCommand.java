@@ -7,15 +7,20 @@ import com.docdoku.api.services.DocumentApi;
 import com.docdoku.api.services.PartApi;
 import com.docdoku.api.services.PartsApi;
 import com.docdoku.cli.commands.BaseCommandLine;
+import com.docdoku.cli.helpers.CliOutput;
 import com.docdoku.cli.helpers.FileHelper;
 import com.docdoku.cli.helpers.MetaDirectoryManager;
+import com.docdoku.cli.helpers.StructureWalker;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * @author Jean-Luc Mounsamy
@@ -100,7 +105,15 @@ public class CheckoutCommand extends BaseCommandLine {
     )
     protected Integer baselineId;
 
-    private Set<String> alreadyProcessed = new HashSet<>();
+    @Option(
+            name = "-j",
+            aliases = "--jobs",
+            metaVar = "<jobs>",
+            usage = "number of parts processed in parallel through the product structure hierarchy (default is 4)"
+    )
+    private int jobs = 4;
+
+    private Queue<PartFile> downloadedPartFiles = new ConcurrentLinkedQueue<>();
 
     @Override
     public void execImpl() throws Exception {
@@ -112,7 +125,7 @@ public class CheckoutCommand extends BaseCommandLine {
             if(document)
                 processDocument();
             else if(part)
-                processPart(id, revision);
+                processParts();
         } catch (Exception e) {
             output.printException(e);
             output.printCommandUsage(this);
@@ -173,15 +186,24 @@ public class CheckoutCommand extends BaseCommandLine {
         }
     }
 
-    private void processPart(String pPartNumber, String pRevision) throws Exception {
-        if (alreadyProcessed.contains(pPartNumber)) {
-            return;
+    private void processParts() throws Exception {
+        Map<String, Exception> failures = new StructureWalker(recursive ? jobs : 1, output)
+                .walk(id, revision, null, recursive, this::processPart);
+        savePartFilesMetadata();
+        if (recursive) {
+            StructureWalker.printFailures(failures, output, langHelper.getLocalizedMessage("FailedParts"));
+        } else if (!failures.isEmpty()) {
+            // The failure of the single part was printed by the walker
+            output.printCommandUsage(this);
         }
+    }
+
+    private List<String> processPart(String pPartNumber, String pRevision, Integer pIteration, CliOutput partOutput) throws ApiException, IOException {
         PartsApi partsApi = new PartsApi(client);
         PartApi partApi = new PartApi(client);
         PartRevisionDTO pr;
         PartIterationDTO pi;
-        output.printInfo(langHelper.getLocalizedMessage("CheckingOutPart") + " : " + pPartNumber);
+        partOutput.printInfo(langHelper.getLocalizedMessage("CheckingOutPart") + " : " + pPartNumber);
         if (pRevision != null) {
             pr = partsApi.getPartRevision(workspace, pPartNumber, pRevision);
             pi = LastIterationHelper.getLastIteration(pr);
@@ -200,15 +222,57 @@ public class CheckoutCommand extends BaseCommandLine {
         BinaryResourceDTO nativeCADFile = pi.getNativeCADFile();
 
         if (nativeCADFile != null && !noDownload) {
-            FileHelper fh = new FileHelper(client, output, langHelper);
-            fh.downloadPartFile(path, workspace, pPartNumber, pRevision, pi.getIteration(), nativeCADFile.getName(), pr.getType(), "nativecad", force);
-        }
-        alreadyProcessed.add(pPartNumber);
-        if (recursive) {
-            for (PartUsageLinkDTO link : pi.getComponents()) {
-                String linkNumber = link.getComponent().getNumber();
-                processPart(linkNumber, null);
+            FileHelper fh = new FileHelper(client, partOutput, langHelper);
+            String digest = fh.downloadPartFile(path, workspace, pPartNumber, pr.getVersion(), pi.getIteration(), nativeCADFile, pr.getType(), "nativecad", force);
+            if (digest != null) {
+                // Digest of the downloaded content, to skip uploading the file on check-in if it is left unchanged
+                File localFile = new File(path, nativeCADFile.getName());
+                downloadedPartFiles.add(new PartFile(localFile, pPartNumber, pr.getVersion(), pi.getIteration(), digest));
             }
         }
+        List<String> components = new ArrayList<>();
+        for (PartUsageLinkDTO link : pi.getComponents()) {
+            components.add(link.getComponent().getNumber());
+        }
+        return components;
+    }
+
+    /**
+     * Metadata of the downloaded files are written in one go once all parts are processed, from a single thread
+     */
+    private void savePartFilesMetadata() throws IOException {
+        if (downloadedPartFiles.isEmpty()) {
+            return;
+        }
+        MetaDirectoryManager meta = new MetaDirectoryManager(path);
+        meta.begin();
+        for (PartFile partFile : downloadedPartFiles) {
+            String filePath = partFile.file.getAbsolutePath();
+            meta.setPartNumber(filePath, partFile.partNumber);
+            meta.setWorkspace(filePath, workspace);
+            meta.setRevision(filePath, partFile.revision);
+            meta.setIteration(filePath, partFile.iteration);
+            meta.setLastModifiedDate(filePath, partFile.file.lastModified());
+            meta.setDigest(filePath, partFile.digest, FileHelper.partTarget(workspace, partFile.partNumber, partFile.revision, partFile.iteration));
+        }
+        meta.commit();
+        downloadedPartFiles.clear();
+    }
+
+    private static class PartFile {
+
+        private final File file;
+        private final String partNumber;
+        private final String revision;
+        private final int iteration;
+        private final String digest;
+
+        private PartFile(File file, String partNumber, String revision, int iteration, String digest) {
+            this.file = file;
+            this.partNumber = partNumber;
+            this.revision = revision;
+            this.iteration = iteration;
+            this.digest = digest;
+        }
     }
 }
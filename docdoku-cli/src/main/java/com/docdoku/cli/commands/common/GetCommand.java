@@ -6,16 +6,18 @@ import com.docdoku.api.models.utils.LastIterationHelper;
 import com.docdoku.api.services.DocumentApi;
 import com.docdoku.api.services.PartsApi;
 import com.docdoku.cli.commands.BaseCommandLine;
+import com.docdoku.cli.helpers.CliOutput;
 import com.docdoku.cli.helpers.FileHelper;
 import com.docdoku.cli.helpers.MetaDirectoryManager;
+import com.docdoku.cli.helpers.StructureWalker;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * @author Jean-Luc Mounsamy
@@ -100,6 +102,14 @@ public class GetCommand extends BaseCommandLine {
             )
     protected Integer baselineId;
 
+    @Option(
+            name = "-j",
+            aliases = "--jobs",
+            metaVar = "<jobs>",
+            usage = "number of parts processed in parallel through the product structure hierarchy (default is 4)"
+            )
+    private int jobs = 4;
+
     @Override
     public void execImpl() throws Exception {
         try {
@@ -112,7 +122,14 @@ public class GetCommand extends BaseCommandLine {
             if(document) {
                 getDocument(id, revision, iteration);
             } else if(part) {
-                getPart(id, revision, iteration, new HashSet<>());
+                Map<String, Exception> failures = new StructureWalker(recursive ? jobs : 1, output)
+                        .walk(id, revision, iteration, recursive, this::getPart);
+                if (recursive) {
+                    StructureWalker.printFailures(failures, output, langHelper.getLocalizedMessage("FailedParts"));
+                } else if (!failures.isEmpty()) {
+                    // The failure of the single part was printed by the walker
+                    output.printCommandUsage(this);
+                }
             }
         } catch (Exception e) {
             output.printException(e);
@@ -165,10 +182,7 @@ public class GetCommand extends BaseCommandLine {
         }
     }
 
-    private void getPart(String pPartNumber, String pRevision, Integer pIteration, Set<String> alreadyProcessed) throws ApiException {
-        if (alreadyProcessed.contains(pPartNumber)) {
-            return;
-        }
+    private List<String> getPart(String pPartNumber, String pRevision, Integer pIteration, CliOutput partOutput) throws ApiException {
         PartsApi partsApi = new PartsApi(client);
         PartRevisionDTO pr;
         PartIterationDTO pi;
@@ -185,20 +199,18 @@ public class GetCommand extends BaseCommandLine {
         BinaryResourceDTO nativeCADFile = pi.getNativeCADFile();
 
         if (nativeCADFile != null) {
-            FileHelper fh = new FileHelper(client, output, langHelper);
-            File result = fh.downloadPartFile(path, workspace, pPartNumber, pRevision, pi.getIteration(), nativeCADFile.getName(), pr.getType(), "nativecad", force);
-            output.printInfo(result.getAbsolutePath());
+            FileHelper fh = new FileHelper(client, partOutput, langHelper);
+            if (fh.downloadPartFile(path, workspace, pPartNumber, pr.getVersion(), pi.getIteration(), nativeCADFile, pr.getType(), "nativecad", force) != null) {
+                partOutput.printInfo(new File(path, nativeCADFile.getName()).getAbsolutePath());
+            }
         } else {
-            output.printInfo(langHelper.getLocalizedMessage("NoFileForPart") + " : " + pPartNumber +
+            partOutput.printInfo(langHelper.getLocalizedMessage("NoFileForPart") + " : " + pPartNumber +
                     " " + pr.getVersion() + "." + pi.getIteration() + " (" + workspace + ")");
         }
-        alreadyProcessed.add(pPartNumber);
-        if (recursive) {
-            for (PartUsageLinkDTO link : pi.getComponents()) {
-                String linkNumber = link.getComponent().getNumber();
-                getPart(linkNumber, null, null, alreadyProcessed);
-            }
+        List<String> components = new ArrayList<>();
+        for (PartUsageLinkDTO link : pi.getComponents()) {
+            components.add(link.getComponent().getNumber());
         }
-
+        return components;
     }
 }
@@ -84,6 +84,10 @@ public class HelpCommand extends AbstractCommandLine {
                 cl=new BaselineListCommand();
                 break;
 
+            case "cache":
+                cl=new CacheCommand();
+                break;
+
             case "conversion": case "cv":
                 cl=new ConversionCommand();
                 break;
@@ -4,6 +4,7 @@ import com.docdoku.api.client.ApiException;
 import com.docdoku.api.models.CountDTO;
 import com.docdoku.api.models.DocumentRevisionDTO;
 import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.paging.Paginator;
 import com.docdoku.api.services.DocumentsApi;
 import com.docdoku.api.services.FoldersApi;
 import com.docdoku.api.services.PartsApi;
@@ -76,7 +77,7 @@ public class ListCommand extends BaseCommandLine {
     @Option(
             name="-m",
             aliases = "--max-results",
-            usage="max results",
+            usage="max results, all results if 0 or not set",
             forbids = {"-doc"}
     )
     private int max;
@@ -104,7 +105,11 @@ public class ListCommand extends BaseCommandLine {
             CountDTO countDTO = partsApi.getTotalNumberOfParts(workspace);
             output.printPartRevisionsCount(countDTO.getCount());
         } else {
-            List<PartRevisionDTO> partRevisions = partsApi.getPartRevisions(workspace, start, max);
+            Paginator<PartRevisionDTO> partRevisions = Paginator.builder(
+                    (pageStart, pageMax) -> partsApi.getPartRevisions(workspace, pageStart, pageMax))
+                    .start(start)
+                    .limit(max)
+                    .build();
             output.printPartRevisions(partRevisions);
         }
     }
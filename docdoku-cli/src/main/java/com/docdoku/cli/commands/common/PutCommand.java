@@ -16,6 +16,7 @@ import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.function.BooleanSupplier;
 
 /**
  * @author Jean-Luc Mounsamy
@@ -88,7 +89,7 @@ public class PutCommand extends BaseCommandLine {
         revision = strRevision;
     }
 
-    private void processDocument() throws ApiException {
+    private void processDocument() throws ApiException, IOException {
         DocumentRevisionDTO docRPK = new DocumentRevisionDTO();
         docRPK.setWorkspaceId(workspace);
         docRPK.setDocumentMasterId(id);
@@ -104,11 +105,11 @@ public class PutCommand extends BaseCommandLine {
         docIPK.setVersion(revision);
         docIPK.setIteration(di.getIteration());
 
-        FileHelper fh = new FileHelper(client, output, langHelper);
-        fh.uploadDocumentFile(workspace, id, revision, di.getIteration(), file);
+        uploadIfChanged(FileHelper.documentTarget(workspace, id, revision, di.getIteration()),
+                () -> new FileHelper(client, output, langHelper).uploadDocumentFile(workspace, id, revision, di.getIteration(), file));
     }
 
-    private void processPart() throws ApiException {
+    private void processPart() throws ApiException, IOException {
         PartRevisionDTO partRPK = new PartRevisionDTO();
         partRPK.setWorkspaceId(workspace);
         partRPK.setNumber(id);
@@ -124,7 +125,20 @@ public class PutCommand extends BaseCommandLine {
         partIPK.setVersion(revision);
         partIPK.setIteration(pi.getIteration());
 
-        FileHelper fh = new FileHelper(client, output, langHelper);
-        fh.uploadPartFile(workspace, id, revision, pi.getIteration(), file);
+        uploadIfChanged(FileHelper.partTarget(workspace, id, revision, pi.getIteration()),
+                () -> new FileHelper(client, output, langHelper).uploadPartFile(workspace, id, revision, pi.getIteration(), file));
+    }
+
+    /**
+     * Upload the file unless it is unchanged since it was downloaded from or last uploaded to the same target
+     */
+    private void uploadIfChanged(String target, BooleanSupplier upload) throws IOException {
+        MetaDirectoryManager meta = new MetaDirectoryManager(file.getAbsoluteFile().getParentFile());
+        FileHelper.UploadCheck check = FileHelper.checkUpload(meta, file, target);
+        if (check.isUnchanged()) {
+            output.printInfo(langHelper.getLocalizedMessage("UnchangedFileSkipped") + " : " + file.getName());
+        } else if (upload.getAsBoolean()) {
+            FileHelper.saveUploadMetadata(meta, check);
+        }
     }
 }
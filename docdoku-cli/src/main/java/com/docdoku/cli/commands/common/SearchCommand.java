@@ -3,13 +3,13 @@ package com.docdoku.cli.commands.common;
 import com.docdoku.api.client.ApiException;
 import com.docdoku.api.models.DocumentRevisionDTO;
 import com.docdoku.api.models.PartRevisionDTO;
+import com.docdoku.api.paging.Paginator;
 import com.docdoku.api.services.DocumentsApi;
 import com.docdoku.api.services.PartsApi;
 import com.docdoku.cli.commands.BaseCommandLine;
 import org.kohsuke.args4j.Option;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * @author Jean-Luc Mounsamy
@@ -67,15 +67,17 @@ public class SearchCommand extends BaseCommandLine {
 
     private void processPart() throws ApiException {
         PartsApi partsApi = new PartsApi(client);
-        List<PartRevisionDTO> partRevisions = partsApi.searchPartRevisions(workspace, searchValue, null, null,
-                null, null, null, null, null, null, null, null, null, null, 0 ,10000, false);
+        Paginator<PartRevisionDTO> partRevisions = Paginator.of((start, max) ->
+                partsApi.searchPartRevisions(workspace, searchValue, null, null,
+                        null, null, null, null, null, null, null, null, null, null, start, max, false));
         output.printPartRevisions(partRevisions);
     }
 
     private void processDocument() throws ApiException {
         DocumentsApi documentsApi = new DocumentsApi(client);
-        List<DocumentRevisionDTO> documentRevisions = documentsApi.searchDocumentRevision(workspace, searchValue,
-                null, null, null, null, null, null, null, null, null, null, null, null, null, 0, 10000, false);
+        Paginator<DocumentRevisionDTO> documentRevisions = Paginator.of((start, max) ->
+                documentsApi.searchDocumentRevision(workspace, searchValue,
+                        null, null, null, null, null, null, null, null, null, null, null, null, null, start, max, false));
         output.printDocumentRevisions(documentRevisions);
     }
 
@@ -146,7 +146,7 @@ public class UndoCheckoutCommand extends BaseCommandLine {
 
         if (nativeCADFile != null && download) {
             FileHelper fh = new FileHelper(client, output, langHelper);
-            fh.downloadPartFile(path, workspace, id, revision, pi.getIteration(), nativeCADFile.getName(), pr.getType(), "nativecad", force);
+            fh.downloadPartFile(path, workspace, id, revision, pi.getIteration(), nativeCADFile, pr.getType(), "nativecad", force);
         }
     }
 }
@@ -0,0 +1,439 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import com.docdoku.api.models.BinaryResourceDTO;
+import com.docdoku.api.transfer.DownloadedFile;
+
+import javax.json.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local store of the downloaded binaries, shared by all the working copies of the user.
+ * <p>
+ * Files are stored once per content, under their SHA-256 digest, in {@code ~/.dplm_cache/blobs}. A reference
+ * per binary (workspace, part or document, version, iteration and file name) points to its content, and is
+ * only used when the size and modification date of the binary on the server still match. Files are copied
+ * to and from the store, never hard linked, so that editing a working copy cannot alter a stored file. A stored
+ * file whose size or modification date changed since it was recorded has its SHA-256 digest checked before use.
+ * The least recently used files are evicted once the store exceeds its maximum size. Their last access is
+ * recorded on a marker file in {@code access} rather than on the stored file, whose modification date must
+ * not change.
+ */
+public class BlobCache {
+
+    private static final String CACHE_DIRECTORY_NAME = ".dplm_cache";
+    private static final String BLOBS_DIRECTORY_NAME = "blobs";
+    private static final String REFS_DIRECTORY_NAME = "refs";
+    private static final String ACCESS_DIRECTORY_NAME = "access";
+    private static final String CONFIG_FILE_NAME = "cache.properties";
+    private static final String MAX_SIZE_PROP = "maxSize";
+    private static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final String KEY_PROP = "key";
+    private static final String SHA256_PROP = "sha256";
+    private static final String MD5_PROP = "md5";
+    private static final String SIZE_PROP = "size";
+    private static final String LAST_MODIFIED_PROP = "lastModified";
+    private static final String BLOB_MODIFIED_PROP = "blobModified";
+
+    private static BlobCache defaultCache;
+
+    private final File blobsDirectory;
+    private final File refsDirectory;
+    private final File accessDirectory;
+    private final File configFile;
+    private long maxSize;
+
+    // Size of the blobs, computed on first use then kept up to date by this process
+    private final AtomicLong size = new AtomicLong(-1);
+
+    public BlobCache(File directory) throws IOException {
+        blobsDirectory = new File(directory, BLOBS_DIRECTORY_NAME);
+        refsDirectory = new File(directory, REFS_DIRECTORY_NAME);
+        accessDirectory = new File(directory, ACCESS_DIRECTORY_NAME);
+        configFile = new File(directory, CONFIG_FILE_NAME);
+        Files.createDirectories(blobsDirectory.toPath());
+        Files.createDirectories(refsDirectory.toPath());
+        Files.createDirectories(accessDirectory.toPath());
+        maxSize = DEFAULT_MAX_SIZE;
+        if (configFile.exists()) {
+            Properties config = new Properties();
+            try (InputStream in = new FileInputStream(configFile)) {
+                config.load(in);
+            }
+            maxSize = Long.parseLong(config.getProperty(MAX_SIZE_PROP, String.valueOf(DEFAULT_MAX_SIZE)));
+        }
+    }
+
+    /**
+     * Get the cache of the user, in the home directory
+     */
+    public static synchronized BlobCache getDefault() throws IOException {
+        if (defaultCache == null) {
+            defaultCache = new BlobCache(new File(System.getProperty("user.home"), CACHE_DIRECTORY_NAME));
+        }
+        return defaultCache;
+    }
+
+    public static String partKey(String workspace, String partNumber, String version, int iteration, String fileName) {
+        return workspace + "/parts/" + partNumber + "/" + version + "/" + iteration + "/" + fileName;
+    }
+
+    public static String documentKey(String workspace, String documentId, String version, int iteration, String fileName) {
+        return workspace + "/documents/" + documentId + "/" + version + "/" + iteration + "/" + fileName;
+    }
+
+    /**
+     * Extract a cached binary to a file
+     *
+     * @param key         : the binary key, see {@link #partKey} and {@link #documentKey}
+     * @param binary      : the binary on the server, its size and modification date must match the cached ones
+     * @param destination : the file to write, replaced if it exists, writable by its owner
+     * @return the base 64 MD5 digest of the extracted file, or null if the binary is not cached
+     */
+    public String restore(String key, BinaryResourceDTO binary, File destination) throws IOException {
+        JsonObject ref = readRef(key);
+        if (ref == null || !matches(ref, binary)) {
+            return null;
+        }
+        String sha256 = ref.getString(SHA256_PROP);
+        File blob = blobFile(sha256);
+        if (!blob.exists()) {
+            Files.deleteIfExists(refFile(key).toPath());
+            return null;
+        }
+        if (!isIntact(key, ref, blob)) {
+            evict(blob);
+            Files.deleteIfExists(refFile(key).toPath());
+            // Computed again on next use
+            size.set(-1);
+            return null;
+        }
+        Path temp = new File(destination.getParentFile(), destination.getName() + ".cache.tmp").toPath();
+        Files.deleteIfExists(temp);
+        try {
+            Files.copy(blob.toPath(), temp);
+            // Stored files are read-only
+            temp.toFile().setWritable(true, true);
+            move(temp, destination.toPath());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        touch(sha256);
+        return ref.getString(MD5_PROP);
+    }
+
+    /**
+     * Add a downloaded binary to the store, evicting the least recently used files if it gets too large
+     *
+     * @param key      : the binary key, see {@link #partKey} and {@link #documentKey}
+     * @param binary : the binary on the server
+     * @param file   : the downloaded file and its digests
+     */
+    public void store(String key, BinaryResourceDTO binary, DownloadedFile file) throws IOException {
+        String sha256 = toHex(file.getSha256());
+        File blob = blobFile(sha256);
+        if (!blob.exists()) {
+            // Size of the store before the new file
+            getSize();
+            Files.createDirectories(blob.getParentFile().toPath());
+            Path temp = new File(blob.getParentFile(), sha256 + ".tmp").toPath();
+            Files.deleteIfExists(temp);
+            try {
+                Files.copy(file.getFile().toPath(), temp);
+                temp.toFile().setWritable(false, false);
+                try {
+                    Files.move(temp, blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    size.addAndGet(file.getLength());
+                } catch (FileAlreadyExistsException e) {
+                    // Stored meanwhile by another download
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        touch(sha256);
+        writeRef(key, Json.createObjectBuilder()
+                .add(KEY_PROP, key)
+                .add(SHA256_PROP, sha256)
+                .add(MD5_PROP, file.getMd5Base64())
+                .add(SIZE_PROP, file.getLength())
+                .add(LAST_MODIFIED_PROP, binary != null && binary.getLastModified() != null ? binary.getLastModified().getTime() : -1)
+                .add(BLOB_MODIFIED_PROP, blob.lastModified())
+                .build());
+        if (getSize() > maxSize) {
+            prune(maxSize);
+        }
+    }
+
+    public File getDirectory() {
+        return blobsDirectory.getParentFile();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum size of the store, saved for the next runs, and evict files beyond it
+     */
+    public void setMaxSize(long maxSize) throws IOException {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        Properties config = new Properties();
+        config.setProperty(MAX_SIZE_PROP, String.valueOf(maxSize));
+        try (OutputStream out = new FileOutputStream(configFile)) {
+            config.store(out, null);
+        }
+        prune(maxSize);
+    }
+
+    public long getSize() throws IOException {
+        if (size.get() < 0) {
+            long total = 0;
+            for (File blob : listBlobs()) {
+                total += blob.length();
+            }
+            size.compareAndSet(-1, total);
+        }
+        return size.get();
+    }
+
+    public int getBlobCount() throws IOException {
+        return listBlobs().size();
+    }
+
+    public int getRefCount() {
+        String[] refs = refsDirectory.list();
+        return refs == null ? 0 : refs.length;
+    }
+
+    /**
+     * Evict the least recently used files until the store fits the given size, and drop the references to evicted files
+     *
+     * @return the number of evicted files
+     */
+    public synchronized int prune(long targetSize) throws IOException {
+        List<File> blobs = listBlobs();
+        blobs.sort(Comparator.comparingLong(this::lastAccess));
+        long total = 0;
+        for (File blob : blobs) {
+            total += blob.length();
+        }
+        int evicted = 0;
+        for (File blob : blobs) {
+            if (total <= targetSize) {
+                break;
+            }
+            long length = blob.length();
+            if (evict(blob)) {
+                total -= length;
+                evicted++;
+            }
+        }
+        size.set(total);
+        if (evicted > 0) {
+            deleteDanglingRefs();
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove all the files of the store
+     *
+     * @return the number of evicted files
+     */
+    public int clear() throws IOException {
+        int evicted = prune(0);
+        deleteDanglingRefs();
+        return evicted;
+    }
+
+    private boolean matches(JsonObject ref, BinaryResourceDTO binary) {
+        if (binary == null) {
+            return true;
+        }
+        if (binary.getContentLength() != null && binary.getContentLength() != ref.getJsonNumber(SIZE_PROP).longValue()) {
+            return false;
+        }
+        return binary.getLastModified() == null || binary.getLastModified().getTime() == ref.getJsonNumber(LAST_MODIFIED_PROP).longValue();
+    }
+
+    private void deleteDanglingRefs() throws IOException {
+        File[] refs = refsDirectory.listFiles();
+        if (refs == null) {
+            return;
+        }
+        for (File refFile : refs) {
+            JsonObject ref = readRef(refFile);
+            if (ref == null || !blobFile(ref.getString(SHA256_PROP)).exists()) {
+                Files.deleteIfExists(refFile.toPath());
+            }
+        }
+    }
+
+    private List<File> listBlobs() throws IOException {
+        List<File> blobs = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(blobsDirectory.toPath(), 2)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .forEach(path -> blobs.add(path.toFile()));
+        }
+        return blobs;
+    }
+
+    private File blobFile(String sha256) {
+        return new File(new File(blobsDirectory, sha256.substring(0, 2)), sha256);
+    }
+
+    private File refFile(String key) {
+        return new File(refsDirectory, toHex(sha256(key.getBytes(StandardCharsets.UTF_8))) + ".json");
+    }
+
+    private JsonObject readRef(String key) {
+        JsonObject ref = readRef(refFile(key));
+        // Guard against hash collisions
+        return ref != null && key.equals(ref.getString(KEY_PROP, null)) ? ref : null;
+    }
+
+    private static JsonObject readRef(File refFile) {
+        if (!refFile.exists()) {
+            return null;
+        }
+        try (JsonReader reader = Json.createReader(new FileInputStream(refFile))) {
+            return reader.readObject();
+        } catch (IOException | JsonException e) {
+            return null;
+        }
+    }
+
+    private void writeRef(String key, JsonObject ref) throws IOException {
+        File refFile = refFile(key);
+        File tempFile = File.createTempFile(refFile.getName(), ".tmp", refsDirectory);
+        try {
+            try (JsonWriter writer = Json.createWriter(new FileOutputStream(tempFile))) {
+                writer.write(ref);
+            }
+            move(tempFile.toPath(), refFile.toPath());
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Record the access to a stored file, access dates order the eviction
+     */
+    private void touch(String sha256) throws IOException {
+        File marker = new File(accessDirectory, sha256);
+        if (!marker.createNewFile()) {
+            Files.setLastModifiedTime(marker.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    private long lastAccess(File blob) {
+        File marker = new File(accessDirectory, blob.getName());
+        return marker.exists() ? marker.lastModified() : blob.lastModified();
+    }
+
+    private boolean evict(File blob) throws IOException {
+        Files.deleteIfExists(new File(accessDirectory, blob.getName()).toPath());
+        return blob.delete();
+    }
+
+    /**
+     * Tell whether a stored file still has the content recorded by a reference. The content is only read when
+     * the file changed since recorded, as when it was hard linked to a working copy by a former version.
+     */
+    private boolean isIntact(String key, JsonObject ref, File blob) throws IOException {
+        if (blob.length() != ref.getJsonNumber(SIZE_PROP).longValue()) {
+            return false;
+        }
+        JsonNumber blobModified = ref.getJsonNumber(BLOB_MODIFIED_PROP);
+        if (blobModified != null && blobModified.longValue() == blob.lastModified()) {
+            return true;
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(blob)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+        if (!ref.getString(SHA256_PROP).equals(toHex(md.digest()))) {
+            return false;
+        }
+        // Checked, not read again until it changes
+        JsonObjectBuilder checked = Json.createObjectBuilder();
+        ref.forEach(checked::add);
+        writeRef(key, checked.add(BLOB_MODIFIED_PROP, blob.lastModified()).build());
+        return true;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
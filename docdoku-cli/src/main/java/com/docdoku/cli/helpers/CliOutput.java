@@ -63,13 +63,13 @@ public abstract class CliOutput {
 
     public abstract void printWorkspaces(List<WorkspaceDTO> workspaceDTOs);
     public abstract void printPartRevisionsCount(int partRevisionsCount);
-    public abstract void printPartRevisions(List<PartRevisionDTO> partRevisions);
+    public abstract void printPartRevisions(Iterable<PartRevisionDTO> partRevisions);
     public abstract void printBaselines(List<ProductBaselineDTO> productBaselines);
     public abstract void printPartRevision(PartRevisionDTO pr, long lastModified);
     public abstract void printConversion(ConversionDTO conversion);
     public abstract void printAccount(AccountDTO accountDTO);
     public abstract void printDocumentRevision(DocumentRevisionDTO dr, long lastModified);
-    public abstract void printDocumentRevisions(List<DocumentRevisionDTO> documentRevisions);
+    public abstract void printDocumentRevisions(Iterable<DocumentRevisionDTO> documentRevisions);
     public abstract void printFolders(List<FolderDTO> folders);
 
     public abstract FilterInputStream getMonitor(long maximum, InputStream in);
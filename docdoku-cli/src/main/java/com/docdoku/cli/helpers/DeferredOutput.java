@@ -0,0 +1,136 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import com.docdoku.api.models.*;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output recording messages to print them later, in one go, on another output.
+ * Lets concurrent tasks print their messages in a stable order without interleaving.
+ */
+public class DeferredOutput extends CliOutput {
+
+    private final CliOutput delegate;
+    private final List<Runnable> messages = new ArrayList<>();
+
+    public DeferredOutput(CliOutput delegate) {
+        this.delegate = delegate;
+        this.debug = delegate.debug;
+    }
+
+    /**
+     * Print the recorded messages on the delegate output
+     */
+    public void flush() {
+        for (Runnable message : messages) {
+            message.run();
+        }
+        messages.clear();
+    }
+
+    @Override
+    public void printException(Exception e) {
+        messages.add(() -> delegate.printException(e));
+    }
+
+    @Override
+    public void printCommandUsage(CommandLine cl) throws IOException {
+        delegate.printCommandUsage(cl);
+    }
+
+    @Override
+    public void printUsage() {
+        messages.add(delegate::printUsage);
+    }
+
+    @Override
+    public void printInfo(String s) {
+        messages.add(() -> delegate.printInfo(s));
+    }
+
+    @Override
+    public void print(String s) {
+        messages.add(() -> delegate.print(s));
+    }
+
+    @Override
+    public void printWorkspaces(List<WorkspaceDTO> workspaceDTOs) {
+        messages.add(() -> delegate.printWorkspaces(workspaceDTOs));
+    }
+
+    @Override
+    public void printPartRevisionsCount(int partRevisionsCount) {
+        messages.add(() -> delegate.printPartRevisionsCount(partRevisionsCount));
+    }
+
+    @Override
+    public void printPartRevisions(Iterable<PartRevisionDTO> partRevisions) {
+        messages.add(() -> delegate.printPartRevisions(partRevisions));
+    }
+
+    @Override
+    public void printBaselines(List<ProductBaselineDTO> productBaselines) {
+        messages.add(() -> delegate.printBaselines(productBaselines));
+    }
+
+    @Override
+    public void printPartRevision(PartRevisionDTO pr, long lastModified) {
+        messages.add(() -> delegate.printPartRevision(pr, lastModified));
+    }
+
+    @Override
+    public void printConversion(ConversionDTO conversion) {
+        messages.add(() -> delegate.printConversion(conversion));
+    }
+
+    @Override
+    public void printAccount(AccountDTO accountDTO) {
+        messages.add(() -> delegate.printAccount(accountDTO));
+    }
+
+    @Override
+    public void printDocumentRevision(DocumentRevisionDTO dr, long lastModified) {
+        messages.add(() -> delegate.printDocumentRevision(dr, lastModified));
+    }
+
+    @Override
+    public void printDocumentRevisions(Iterable<DocumentRevisionDTO> documentRevisions) {
+        messages.add(() -> delegate.printDocumentRevisions(documentRevisions));
+    }
+
+    @Override
+    public void printFolders(List<FolderDTO> folders) {
+        messages.add(() -> delegate.printFolders(folders));
+    }
+
+    @Override
+    public FilterInputStream getMonitor(long maximum, InputStream in) {
+        // Progress printed later would be meaningless, and printed now it would interleave with other tasks
+        return new FilterInputStream(in) {
+        };
+    }
+}
@@ -27,20 +27,30 @@ import com.docdoku.api.models.*;
 import com.docdoku.api.models.utils.LastIterationHelper;
 import com.docdoku.api.services.DocumentBinaryApi;
 import com.docdoku.api.services.PartBinaryApi;
+import com.docdoku.api.transfer.DownloadedFile;
+import com.docdoku.api.transfer.ResumableDownloader;
 
 import java.io.Console;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
-
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.Map;
 
 public class FileHelper {
 
+    // Interrupted downloads are resumed from the partial file left next to their destination
+    private static final ResumableDownloader DOWNLOADER = ResumableDownloader.builder().build();
+
+    private static final int UPLOAD_MAX_ATTEMPTS = 3;
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
     private ApiClient client;
     private CliOutput output;
     private LangHelper langHelper;
@@ -51,14 +61,21 @@ public class FileHelper {
         this.langHelper = langHelper;
     }
 
-    public static boolean confirmOverwrite(String fileName) {
+    public static synchronized boolean confirmOverwrite(String fileName) {
         Console c = System.console();
         String response = c.readLine("The file '" + fileName + "' has been modified locally, do you want to overwrite it [y/N]?");
         return "y".equalsIgnoreCase(response);
     }
 
-    public File downloadPartFile(File path, String pWorkspace, String pPartNumber, String pVersion, int pIteration, String pFilename, String pType, String pSubType, boolean force) {
+    /**
+     * Download the file of a part to the given directory, or restore it from the local cache
+     *
+     * @return the base 64 MD5 digest of the file, computed while it was downloaded or stored with the cached
+     * file, or null if the file was not downloaded
+     */
+    public String downloadPartFile(File path, String pWorkspace, String pPartNumber, String pVersion, int pIteration, BinaryResourceDTO pBinary, String pType, String pSubType, boolean force) {
         PartBinaryApi partBinaryApi = new PartBinaryApi(client);
+        String pFilename = pBinary.getName();
         File localFile = new File(path, pFilename);
         MetaDirectoryManager meta;
         try {
@@ -68,10 +85,15 @@ public class FileHelper {
                 if (!confirm)
                     return null;
             }
-            File result = partBinaryApi.downloadPartFile(pWorkspace, pPartNumber, pVersion, pIteration, pSubType, pFilename, pType, null, null, null, null, null);
-            Files.move(result.toPath(), localFile.toPath(), REPLACE_EXISTING);
+            String key = BlobCache.partKey(pWorkspace, pPartNumber, pVersion, pIteration, pFilename);
+            String digestString = restoreFromCache(key, pBinary, localFile);
+            if (digestString == null) {
+                DownloadedFile result = DOWNLOADER.download(client, localFile, () -> partBinaryApi.downloadPartFile(pWorkspace, pPartNumber, pVersion, pIteration, pSubType, pFilename, pType, null, null, null, null, null));
+                storeInCache(key, pBinary, result);
+                digestString = result.getMd5Base64();
+            }
             output.printInfo(langHelper.getLocalizedMessage("DownloadindFileSuccess"));
-            return localFile;
+            return digestString;
         } catch (ApiException | IOException e) {
             output.printInfo(langHelper.getLocalizedMessage("DownloadingFileFailure"));
             output.printException(e);
@@ -102,22 +124,24 @@ public class FileHelper {
 
     private void saveMetadata(MetaDirectoryManager meta, DocumentIterationDTO docIPK, String digest, File localFile) throws IOException {
         String filePath = localFile.getAbsolutePath();
-        meta.setDigest(filePath, digest);
+        meta.begin();
+        meta.setDigest(filePath, digest, documentTarget(docIPK.getWorkspaceId(), docIPK.getDocumentMasterId(), docIPK.getVersion(), docIPK.getIteration()));
         meta.setDocumentId(filePath, docIPK.getDocumentMasterId());
         meta.setWorkspace(filePath, docIPK.getWorkspaceId());
         meta.setRevision(filePath, docIPK.getVersion());
         meta.setIteration(filePath, docIPK.getIteration());
         meta.setLastModifiedDate(filePath, localFile.lastModified());
+        meta.commit();
     }
 
-    public File downloadDocumentFile(String pWorkspace, String pId, String pVersion, int pIteration, String pFilename, String pType) {
+    public DownloadedFile downloadDocumentFile(File localFile, String pWorkspace, String pId, String pVersion, int pIteration, String pFilename, String pType) {
         DocumentBinaryApi documentBinaryApi = new DocumentBinaryApi(client);
         try {
             output.printInfo(
                     langHelper.getLocalizedMessage("DownloadingFile")
                             + " : "
                             + pFilename);
-            File result = documentBinaryApi.downloadDocumentFile(pWorkspace, pId, pVersion, pIteration, pFilename, pType, null, null, null, null, null);
+            DownloadedFile result = DOWNLOADER.download(client, localFile, () -> documentBinaryApi.downloadDocumentFile(pWorkspace, pId, pVersion, pIteration, pFilename, pType, null, null, null, null, null));
             output.printInfo(langHelper.getLocalizedMessage("DownloadindFileSuccess"));
             return result;
         } catch (ApiException e) {
@@ -148,6 +172,23 @@ public class FileHelper {
         return false;
     }
 
+    /**
+     * Upload files of a document iteration concurrently, retrying each file on transient failures
+     *
+     * @param jobs : maximum number of concurrent uploads
+     * @return the failures by file
+     */
+    public Map<File, Exception> uploadDocumentFiles(String pWorkspace, String pId, String pVersion, int pIteration, List<File> pFiles, int jobs) throws InterruptedException {
+        DocumentBinaryApi documentBinaryApi = new DocumentBinaryApi(client);
+        output.printInfo(langHelper.getLocalizedMessage("UploadingFiles") + " : " + pFiles.size());
+        return new ParallelUploader(jobs, UPLOAD_MAX_ATTEMPTS, output, langHelper).upload(pFiles, file -> {
+            ApiResponse<Void> response = documentBinaryApi.uploadDocumentFilesWithHttpInfo(pWorkspace, pId, pVersion, pIteration, file);
+            if (response.getStatusCode() != 201) {
+                throw new ApiException(response.getStatusCode(), langHelper.getLocalizedMessage("UploadingFileFailed"));
+            }
+        });
+    }
+
     public List<File> downloadDocumentFiles(File path, String user, String pWorkspace, String pId, DocumentRevisionDTO pDocumentRevision, DocumentIterationDTO pDocumentIteration, boolean force) throws IOException {
         List<File> files = new ArrayList<>();
         if(this.client == null) {
@@ -169,23 +210,28 @@ public class FileHelper {
                     continue;
             }
 
-            File result = downloadDocumentFile(pWorkspace, pId, version, iteration, fileName, pDocumentRevision.getType());
+            // Digest computed while the file was downloaded, or stored with the cached file
+            String key = BlobCache.documentKey(pWorkspace, pId, version, iteration, fileName);
+            String digestString = restoreFromCache(key, binaryResource, localFile);
+            if (digestString == null) {
+                DownloadedFile result = downloadDocumentFile(localFile, pWorkspace, pId, version, iteration, fileName, pDocumentRevision.getType());
+                if (result == null) {
+                    continue;
+                }
+                storeInCache(key, binaryResource, result);
+                digestString = result.getMd5Base64();
+            }
 
             try {
-                MessageDigest md = MessageDigest.getInstance("MD5");
-                md.update(Files.readAllBytes(result.toPath()));
-                byte[] digest = md.digest();
-                String digestString = Base64.getEncoder().encodeToString(digest);
 
-                result.setWritable(writable, false);
+                localFile.setWritable(writable, false);
 
                 DocumentIterationDTO docIPK = new DocumentIterationDTO();
                 docIPK.setWorkspaceId(pWorkspace);
                 docIPK.setDocumentMasterId(pId);
                 docIPK.setVersion(version);
                 docIPK.setIteration(iteration);
-                saveMetadata(meta, docIPK, digestString, result);
-                Files.move(result.toPath(), localFile.toPath(), REPLACE_EXISTING);
+                saveMetadata(meta, docIPK, digestString, localFile);
                 files.add(localFile);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -194,6 +240,115 @@ public class FileHelper {
         return files;
     }
 
+    /**
+     * Extract a file from the local cache of downloaded binaries
+     *
+     * @return the base 64 MD5 digest of the file, or null if it has to be downloaded
+     */
+    private String restoreFromCache(String key, BinaryResourceDTO binary, File localFile) {
+        try {
+            String digest = BlobCache.getDefault().restore(key, binary, localFile);
+            if (digest != null) {
+                output.printInfo(langHelper.getLocalizedMessage("FileRestoredFromCache") + " : " + localFile.getName());
+            }
+            return digest;
+        } catch (IOException e) {
+            // The cache is only an optimization, the file is downloaded instead
+            return null;
+        }
+    }
+
+    private void storeInCache(String key, BinaryResourceDTO binary, DownloadedFile file) {
+        try {
+            BlobCache.getDefault().store(key, binary, file);
+        } catch (IOException e) {
+            // The downloaded file is still valid
+        }
+    }
+
+    /**
+     * Identify a part iteration as the target of a file upload
+     */
+    public static String partTarget(String workspace, String partNumber, String version, int iteration) {
+        return workspace + "/parts/" + partNumber + "/" + version + "/" + iteration;
+    }
+
+    /**
+     * Identify a document iteration as the target of a file upload
+     */
+    public static String documentTarget(String workspace, String documentId, String version, int iteration) {
+        return workspace + "/documents/" + documentId + "/" + version + "/" + iteration;
+    }
+
+    /**
+     * Tell whether a file still has the content it had when downloaded from or last uploaded to the target.
+     *
+     * @param target : the iteration the file is to be uploaded to, see {@link #partTarget} and {@link #documentTarget}
+     * @return false if the file was modified, if its content is not known, or if it is known for another target
+     * @see #checkUpload
+     */
+    public static boolean isUnchanged(MetaDirectoryManager meta, File file, String target) throws IOException {
+        return checkUpload(meta, file, target).isUnchanged();
+    }
+
+    /**
+     * Check whether a file still has the content it had when downloaded from or last uploaded to the target.
+     * The modification date is checked first, the file is only hashed when it changed. A file found
+     * unchanged by its hash gets its new modification date recorded, to skip hashing it next time.
+     * A file found modified keeps the digest computed here, to be recorded once uploaded.
+     *
+     * @param target : the iteration the file is to be uploaded to, see {@link #partTarget} and {@link #documentTarget}
+     */
+    public static UploadCheck checkUpload(MetaDirectoryManager meta, File file, String target) throws IOException {
+        String filePath = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        if (!target.equals(meta.getDigestTarget(filePath))) {
+            return new UploadCheck(file, target, lastModified, null, false);
+        }
+        if (lastModified == meta.getLastModifiedDate(filePath)) {
+            return new UploadCheck(file, target, lastModified, meta.getDigest(filePath), true);
+        }
+        String digest = digest(file);
+        if (!digest.equals(meta.getDigest(filePath))) {
+            return new UploadCheck(file, target, lastModified, digest, false);
+        }
+        meta.setLastModifiedDate(filePath, lastModified);
+        return new UploadCheck(file, target, lastModified, digest, true);
+    }
+
+    /**
+     * Record the content of a file uploaded to the target, so that it is not uploaded there again until it is modified.
+     * The digest and the modification date are the ones of the check, the file is only hashed if the check did not.
+     */
+    public static void saveUploadMetadata(MetaDirectoryManager meta, UploadCheck check) throws IOException {
+        String filePath = check.getFile().getAbsolutePath();
+        String digest = check.getDigest();
+        meta.begin();
+        meta.setDigest(filePath, digest, check.getTarget());
+        meta.setLastModifiedDate(filePath, check.getLastModified());
+        meta.commit();
+    }
+
+    /**
+     * Compute the base 64 MD5 digest of a file, reading it by chunks
+     */
+    public static String digest(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+        return Base64.getEncoder().encodeToString(md.digest());
+    }
+
     public static String getFileName(String path) {
         if (path == null || path.isEmpty()) {
             return null;
@@ -202,4 +357,52 @@ public class FileHelper {
         return path.substring(lastSlash + 1, path.length());
     }
 
+
+    /**
+     * The state of a local file before its upload, see {@link #checkUpload}
+     */
+    public static final class UploadCheck {
+
+        private final File file;
+        private final String target;
+        private final boolean unchanged;
+        private long lastModified;
+        private String digest;
+
+        private UploadCheck(File file, String target, long lastModified, String digest, boolean unchanged) {
+            this.file = file;
+            this.target = target;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.unchanged = unchanged;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * Get the base 64 MD5 digest of the file, hashing it only if the check did not.
+         * The modification date is then read again, to match the hashed content.
+         */
+        public String getDigest() throws IOException {
+            if (digest == null) {
+                lastModified = file.lastModified();
+                digest = FileHelper.digest(file);
+            }
+            return digest;
+        }
+    }
 }
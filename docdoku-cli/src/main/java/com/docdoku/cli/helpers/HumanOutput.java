@@ -75,6 +75,7 @@ public class HumanOutput extends CliOutput {
         ERROR_STREAM.println(langHelper.getLocalizedMessage("AvailableCommands") + ":");
         ERROR_STREAM.println("   account (a)");
         ERROR_STREAM.println("   baselinelist (bl)");
+        ERROR_STREAM.println("   cache");
         ERROR_STREAM.println("   checkin (ci)");
         ERROR_STREAM.println("   checkout (co)");
         ERROR_STREAM.println("   conversion (cv)");
@@ -113,7 +114,7 @@ public class HumanOutput extends CliOutput {
     }
 
     @Override
-    public void printPartRevisions(List<PartRevisionDTO> partRevisions) {
+    public void printPartRevisions(Iterable<PartRevisionDTO> partRevisions) {
         for (PartRevisionDTO pr : partRevisions) {
             printRevisionStatus(1, pr);
         }
@@ -162,7 +163,7 @@ public class HumanOutput extends CliOutput {
     }
 
     @Override
-    public void printDocumentRevisions(List<DocumentRevisionDTO> documentRevisions) {
+    public void printDocumentRevisions(Iterable<DocumentRevisionDTO> documentRevisions) {
         for (DocumentRevisionDTO dr : documentRevisions) {
             printDocumentRevision(dr, 1);
         }
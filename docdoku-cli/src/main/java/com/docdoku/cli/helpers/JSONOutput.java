@@ -27,7 +27,9 @@ import org.kohsuke.args4j.CmdLineParser;
 import javax.json.*;
 import java.io.*;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 
 public class JSONOutput extends CliOutput {
 
@@ -90,12 +92,8 @@ public class JSONOutput extends CliOutput {
     }
 
     @Override
-    public void printPartRevisions(List<PartRevisionDTO> partRevisions) {
-        JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
-        for (PartRevisionDTO partRevision : partRevisions) {
-            jsonArrayBuilder.add(getPartRevision(partRevision, 0L));
-        }
-        OUTPUT_STREAM.println(jsonArrayBuilder.build().toString());
+    public void printPartRevisions(Iterable<PartRevisionDTO> partRevisions) {
+        printArray(partRevisions, partRevision -> getPartRevision(partRevision, 0L));
     }
 
     @Override
@@ -155,12 +153,8 @@ public class JSONOutput extends CliOutput {
     }
 
     @Override
-    public void printDocumentRevisions(List<DocumentRevisionDTO> documentRevisions) {
-        JsonArrayBuilder jsonArray = Json.createArrayBuilder();
-        for (DocumentRevisionDTO documentRevision : documentRevisions) {
-            jsonArray.add(getDocumentRevision(documentRevision, 0L));
-        }
-        OUTPUT_STREAM.println(jsonArray.build().toString());
+    public void printDocumentRevisions(Iterable<DocumentRevisionDTO> documentRevisions) {
+        printArray(documentRevisions, documentRevision -> getDocumentRevision(documentRevision, 0L));
     }
 
     @Override
@@ -177,6 +171,26 @@ public class JSONOutput extends CliOutput {
         return new JSONProgressMonitorInputStream(maximum, in);
     }
 
+    private <T> void printArray(Iterable<T> elements, Function<T, JsonObject> toJson) {
+        // Elements are printed as they come so that large results are never held in memory,
+        // the first ones are fetched before printing anything
+        Iterator<T> iterator = elements.iterator();
+        boolean hasNext = iterator.hasNext();
+        OUTPUT_STREAM.print('[');
+        try {
+            while (hasNext) {
+                OUTPUT_STREAM.print(toJson.apply(iterator.next()));
+                hasNext = iterator.hasNext();
+                if (hasNext) {
+                    OUTPUT_STREAM.print(',');
+                }
+            }
+        } finally {
+            // A page failing to load still leaves a well-formed array, the error is reported by the caller
+            OUTPUT_STREAM.println(']');
+        }
+    }
+
     private JsonObject getPartRevision(PartRevisionDTO pr, long lastModified) {
 
         JsonObjectBuilder jsonStatusBuilder = Json.createObjectBuilder();
@@ -22,18 +22,36 @@ package com.docdoku.cli.helpers;
 
 import javax.json.*;
 import java.io.*;
-import java.util.Enumeration;
-import java.util.Properties;
-import java.util.Set;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Metadata of the files of a working directory, stored in its .dplm/index.json file.
+ * <p>
+ * The index holds one record per file, keyed by its path relative to the working directory so that
+ * the directory can be moved. Indexes written in the former format, with one property per file
+ * attribute keyed by absolute path, are migrated when loaded.
+ */
 public class MetaDirectoryManager {
 
+    private File workingDirectory;
     private File metaDirectory;
-    private Properties indexProps;
+    private Map<String, FileEntry> entries;
+    private boolean inTransaction;
+    private boolean dirty;
 
 
     private static final String META_DIRECTORY_NAME = ".dplm";
     private static final String INDEX_FILE_NAME = "index.json";
+    private static final String BACKUP_SUFFIX = ".bak";
+
+    private static final int INDEX_VERSION = 2;
+    private static final String VERSION_PROP = "version";
+    private static final String FILES_PROP = "files";
 
     private static final String PART_NUMBER_PROP = "number";
     private static final String REVISION_PROP = "revision";
@@ -42,94 +60,146 @@ public class MetaDirectoryManager {
     private static final String ID_PROP = "documentMasterId";
     private static final String LAST_MODIFIED_DATE_PROP = "lastModifiedDate";
     private static final String DIGEST_PROP = "digest";
+    private static final String DIGEST_TARGET_PROP = "digestTarget";
 
     public MetaDirectoryManager(File workingDirectory) throws IOException {
-        this.metaDirectory = new File(workingDirectory, META_DIRECTORY_NAME);
+        // The parent of a bare file name is null, it stands for the current directory
+        this.workingDirectory = workingDirectory != null ? workingDirectory.getAbsoluteFile() : new File("").getAbsoluteFile();
+        this.metaDirectory = new File(this.workingDirectory, META_DIRECTORY_NAME);
         if (!metaDirectory.exists()) {
             metaDirectory.mkdir();
         }
         File indexFile = new File(metaDirectory, INDEX_FILE_NAME);
-        indexProps = loadPropertiesFromIndexFile(indexFile);
+        entries = loadEntriesFromIndexFile(indexFile);
+    }
+
+    /**
+     * Start buffering changes, the index is written once on commit
+     */
+    public void begin() {
+        inTransaction = true;
+    }
+
+    /**
+     * Write the changes buffered since begin, if any
+     */
+    public void commit() throws IOException {
+        inTransaction = false;
+        if (dirty) {
+            saveIndex();
+        }
     }
 
     private void saveIndex() throws IOException {
+        if (inTransaction) {
+            dirty = true;
+            return;
+        }
+        // Write to a temporary file then rename it so that readers never see a partial index
         File indexFile = new File(metaDirectory, INDEX_FILE_NAME);
-        if (!indexFile.exists()) {
-            indexFile.createNewFile();
+        File tempFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", metaDirectory);
+        try {
+            try (JsonWriter writer = Json.createWriter(new FileOutputStream(tempFile))) {
+                writer.write(getEntriesAsJsonObject());
+            }
+            try {
+                Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
         }
-        JsonWriter writer = Json.createWriter(new FileOutputStream(indexFile));
-        writer.write(getPropertiesAsJsonObject());
-        writer.close();
     }
 
     public void setPartNumber(String filePath, String partNumber) throws IOException {
-        indexProps.setProperty(filePath + "." + PART_NUMBER_PROP, partNumber);
+        entry(filePath).partNumber = partNumber;
         saveIndex();
     }
 
     public void setDocumentId(String filePath, String id) throws IOException {
-        indexProps.setProperty(filePath + "." + ID_PROP, id);
+        entry(filePath).documentId = id;
         saveIndex();
     }
 
     public void setRevision(String filePath, String revision) throws IOException {
-        indexProps.setProperty(filePath + "." + REVISION_PROP, revision);
+        entry(filePath).revision = revision;
         saveIndex();
     }
 
     public void setIteration(String filePath, int iteration) throws IOException {
-        indexProps.setProperty(filePath + "." + ITERATION_PROP, iteration + "");
+        entry(filePath).iteration = iteration;
         saveIndex();
     }
 
     public void setLastModifiedDate(String filePath, long lastModifiedDate) throws IOException {
-        indexProps.setProperty(filePath + "." + LAST_MODIFIED_DATE_PROP, lastModifiedDate + "");
+        entry(filePath).lastModifiedDate = lastModifiedDate;
         saveIndex();
     }
 
     public void setWorkspace(String filePath, String workspaceId) throws IOException {
-        indexProps.setProperty(filePath + "." + WORKSPACE_PROP, workspaceId + "");
+        entry(filePath).workspaceId = workspaceId;
         saveIndex();
     }
 
-    public void setDigest(String filePath, String digest) throws IOException {
-        indexProps.setProperty(filePath + "." + DIGEST_PROP, digest);
+    /**
+     * Record the content of a file as known on the server
+     *
+     * @param digest : base 64 MD5 digest of the file
+     * @param target : the document or part iteration holding this content, see {@link FileHelper#partTarget}
+     *               and {@link FileHelper#documentTarget}
+     */
+    public void setDigest(String filePath, String digest, String target) throws IOException {
+        FileEntry entry = entry(filePath);
+        entry.digest = digest;
+        entry.digestTarget = target;
         saveIndex();
     }
 
     public long getLastModifiedDate(String filePath) {
-        return Long.parseLong(indexProps.getProperty(filePath + "." + LAST_MODIFIED_DATE_PROP, "0"));
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.lastModifiedDate : 0;
+    }
+
+    public String getDigest(String filePath) {
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.digest : null;
+    }
+
+    public String getDigestTarget(String filePath) {
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.digestTarget : null;
     }
 
     public String getPartNumber(String filePath) {
-        return indexProps.getProperty(filePath + "." + PART_NUMBER_PROP);
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.partNumber : null;
     }
 
     public String getWorkspace(String filePath) {
-        return indexProps.getProperty(filePath + "." + WORKSPACE_PROP);
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.workspaceId : null;
     }
 
     public String getRevision(String filePath) {
-        return indexProps.getProperty(filePath + "." + REVISION_PROP);
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.revision : null;
     }
 
     public int getIteration(String filePath) {
-        return Integer.parseInt(indexProps.getProperty(filePath + "." + ITERATION_PROP, "0"));
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.iteration : 0;
     }
 
     public void deleteEntryInfo(String filePath) throws IOException {
-        indexProps.remove(filePath + "." + ID_PROP);
-        indexProps.remove(filePath + "." + PART_NUMBER_PROP);
-        indexProps.remove(filePath + "." + REVISION_PROP);
-        indexProps.remove(filePath + "." + ITERATION_PROP);
-        indexProps.remove(filePath + "." + LAST_MODIFIED_DATE_PROP);
-        indexProps.remove(filePath + "." + DIGEST_PROP);
-        indexProps.remove(filePath + "." + WORKSPACE_PROP);
+        entries.remove(key(filePath));
         saveIndex();
     }
 
     public String getDocumentId(String filePath) {
-        return indexProps.getProperty(filePath + "." + ID_PROP);
+        FileEntry entry = entries.get(key(filePath));
+        return entry != null ? entry.documentId : null;
     }
 
     public boolean isDocumentRelated(String filePath) {
@@ -140,42 +210,146 @@ public class MetaDirectoryManager {
         return getPartNumber(filePath) != null;
     }
 
-    private JsonObject getPropertiesAsJsonObject() {
-        JsonObjectBuilder json = Json.createObjectBuilder();
-        Enumeration keys = indexProps.keys();
-        while (keys.hasMoreElements()) {
-            String key = (String) keys.nextElement();
-            String value = (String) indexProps.get(key);
-            json.add(key, value);
+    private FileEntry entry(String filePath) {
+        return entries.computeIfAbsent(key(filePath), k -> new FileEntry());
+    }
+
+    /**
+     * Get the index key of a file: its path relative to the working directory, with '/' separators
+     */
+    private String key(String filePath) {
+        Path path = new File(filePath).getAbsoluteFile().toPath().normalize();
+        Path relative = workingDirectory.toPath().normalize().relativize(path);
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    private JsonObject getEntriesAsJsonObject() {
+        JsonObjectBuilder files = Json.createObjectBuilder();
+        for (Map.Entry<String, FileEntry> entry : entries.entrySet()) {
+            files.add(entry.getKey(), entry.getValue().toJson());
         }
-        return json.build();
+        return Json.createObjectBuilder()
+                .add(VERSION_PROP, INDEX_VERSION)
+                .add(FILES_PROP, files)
+                .build();
     }
 
-    private Properties loadPropertiesFromIndexFile(File file) {
+    private Map<String, FileEntry> loadEntriesFromIndexFile(File file) {
 
-        Properties props = new Properties();
+        Map<String, FileEntry> loaded = new TreeMap<>();
 
         if (!file.exists()) {
-            return props;
+            return loaded;
         }
-        JsonReader reader = null;
-        try (FileInputStream fis = new FileInputStream(file)) {
-            reader = Json.createReader(fis);
+        try (FileInputStream fis = new FileInputStream(file); JsonReader reader = Json.createReader(fis)) {
             JsonObject json = reader.readObject();
-            Set<String> keys = json.keySet();
-            for (String key : keys) {
-                props.setProperty(key, json.getString(key));
+            if (json.containsKey(FILES_PROP)) {
+                JsonObject files = json.getJsonObject(FILES_PROP);
+                for (String key : files.keySet()) {
+                    try {
+                        loaded.put(key, FileEntry.fromJson(files.getJsonObject(key)));
+                    } catch (ClassCastException ex) {
+                        // Skip a malformed entry, keep the others
+                    }
+                }
+            } else {
+                migrateFlatProperties(json, loaded);
             }
-            return props;
+            return loaded;
 
-        } catch (IOException ex) {
-            file.delete();
-            return props;
-        } finally {
-            if (null != reader) {
-                reader.close();
+        } catch (IOException | JsonException | ClassCastException ex) {
+            // Unreadable index: keep it aside rather than losing it, and start over
+            try {
+                Files.move(file.toPath(), new File(file.getParentFile(), file.getName() + BACKUP_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveEx) {
+                file.delete();
             }
+            return loaded;
         }
 
     }
+
+    /**
+     * Read an index of the former format: "absolutePath.property" keys and string values
+     */
+    private void migrateFlatProperties(JsonObject json, Map<String, FileEntry> loaded) {
+        for (String key : json.keySet()) {
+            int separator = key.lastIndexOf('.');
+            if (separator <= 0) {
+                continue;
+            }
+            JsonValue value = json.get(key);
+            if (value.getValueType() != JsonValue.ValueType.STRING) {
+                continue;
+            }
+            FileEntry entry = loaded.computeIfAbsent(key(key.substring(0, separator)), k -> new FileEntry());
+            try {
+                entry.set(key.substring(separator + 1), ((JsonString) value).getString());
+            } catch (IllegalArgumentException ex) {
+                // Not a number where one is expected, the property is dropped
+            }
+        }
+    }
+
+    private static class FileEntry {
+
+        private String partNumber;
+        private String documentId;
+        private String workspaceId;
+        private String revision;
+        private int iteration;
+        private long lastModifiedDate;
+        private String digest;
+        private String digestTarget;
+
+        private void set(String property, String value) {
+            switch (property) {
+                case PART_NUMBER_PROP: partNumber = value; break;
+                case ID_PROP: documentId = value; break;
+                case WORKSPACE_PROP: workspaceId = value; break;
+                case REVISION_PROP: revision = value; break;
+                case ITERATION_PROP: iteration = Integer.parseInt(value); break;
+                case LAST_MODIFIED_DATE_PROP: lastModifiedDate = Long.parseLong(value); break;
+                case DIGEST_PROP: digest = value; break;
+                default: break;
+            }
+        }
+
+        private JsonObject toJson() {
+            JsonObjectBuilder json = Json.createObjectBuilder();
+            addIfNotNull(json, PART_NUMBER_PROP, partNumber);
+            addIfNotNull(json, ID_PROP, documentId);
+            addIfNotNull(json, WORKSPACE_PROP, workspaceId);
+            addIfNotNull(json, REVISION_PROP, revision);
+            if (iteration != 0) {
+                json.add(ITERATION_PROP, iteration);
+            }
+            if (lastModifiedDate != 0) {
+                json.add(LAST_MODIFIED_DATE_PROP, lastModifiedDate);
+            }
+            addIfNotNull(json, DIGEST_PROP, digest);
+            addIfNotNull(json, DIGEST_TARGET_PROP, digestTarget);
+            return json.build();
+        }
+
+        private static FileEntry fromJson(JsonObject json) {
+            FileEntry entry = new FileEntry();
+            entry.partNumber = json.getString(PART_NUMBER_PROP, null);
+            entry.documentId = json.getString(ID_PROP, null);
+            entry.workspaceId = json.getString(WORKSPACE_PROP, null);
+            entry.revision = json.getString(REVISION_PROP, null);
+            entry.iteration = json.getInt(ITERATION_PROP, 0);
+            JsonNumber lastModifiedDate = json.getJsonNumber(LAST_MODIFIED_DATE_PROP);
+            entry.lastModifiedDate = lastModifiedDate != null ? lastModifiedDate.longValue() : 0;
+            entry.digest = json.getString(DIGEST_PROP, null);
+            entry.digestTarget = json.getString(DIGEST_TARGET_PROP, null);
+            return entry;
+        }
+
+        private static void addIfNotNull(JsonObjectBuilder json, String name, String value) {
+            if (value != null) {
+                json.add(name, value);
+            }
+        }
+    }
 }
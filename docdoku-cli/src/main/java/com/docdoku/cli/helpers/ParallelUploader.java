@@ -0,0 +1,196 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import com.docdoku.api.client.ApiException;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads files concurrently with a bounded number of workers.
+ * <p>
+ * Each file is retried on its own when its upload fails with a transient error (network failure, server error
+ * or throttling), waiting twice as long before each new attempt. The overall progress is printed as files
+ * complete. A failing file does not stop the other uploads, failures are returned at the end.
+ */
+public class ParallelUploader {
+
+    /**
+     * Upload of one file
+     */
+    @FunctionalInterface
+    public interface FileUpload {
+
+        /**
+         * @param file : the file to upload
+         * @throws ApiException if the upload fails
+         */
+        void upload(File file) throws ApiException;
+    }
+
+    private static final AtomicInteger UPLOADER_COUNT = new AtomicInteger();
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private final int jobs;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final CliOutput output;
+    private final LangHelper langHelper;
+
+    public ParallelUploader(int jobs, int maxAttempts, CliOutput output, LangHelper langHelper) {
+        this(jobs, maxAttempts, INITIAL_BACKOFF_MILLIS, output, langHelper);
+    }
+
+    ParallelUploader(int jobs, int maxAttempts, long initialBackoff, CliOutput output, LangHelper langHelper) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("jobs < 1: " + jobs);
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+        }
+        this.jobs = jobs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.output = output;
+        this.langHelper = langHelper;
+    }
+
+    /**
+     * Upload the given files
+     *
+     * @return the failures by file, in the order of the given files
+     * @throws InterruptedException if interrupted while waiting for the uploads to end
+     */
+    public Map<File, Exception> upload(List<File> files, FileUpload upload) throws InterruptedException {
+        if (files.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        Progress progress = new Progress(files.size(), totalBytes);
+
+        int uploaderId = UPLOADER_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, files.size()), runnable -> {
+            Thread thread = new Thread(runnable, "dplm-uploader-" + uploaderId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<File, Exception> failures = new LinkedHashMap<>();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    uploadWithRetry(file, upload);
+                    progress.completed(file);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.put(files.get(i), cause instanceof Exception ? (Exception) cause : e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return failures;
+    }
+
+    /**
+     * Print a summary of the failures returned by an upload, if any
+     *
+     * @param title : localized title of the summary
+     */
+    public static void printFailures(Map<File, Exception> failures, CliOutput output, String title) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        output.printInfo(title + " (" + failures.size() + ") :");
+        for (Map.Entry<File, Exception> failure : failures.entrySet()) {
+            output.printInfo("  " + failure.getKey().getName() + " : " + failure.getValue().getMessage());
+        }
+    }
+
+    private void uploadWithRetry(File file, FileUpload upload) throws ApiException, InterruptedException {
+        long backoff = initialBackoff;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                upload.upload(file);
+                return;
+            } catch (ApiException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                output.printInfo(langHelper.getLocalizedMessage("RetryingUpload") + " : " + file.getName()
+                        + " (" + attempt + "/" + (maxAttempts - 1) + ")");
+                TimeUnit.MILLISECONDS.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private static boolean isTransient(ApiException e) {
+        int code = e.getCode();
+        return code == 0 && e.getCause() instanceof IOException || code == 429 || code >= 500;
+    }
+
+    private class Progress {
+
+        private final int totalFiles;
+        private final long totalBytes;
+        private int completedFiles;
+        private long completedBytes;
+
+        private Progress(int totalFiles, long totalBytes) {
+            this.totalFiles = totalFiles;
+            this.totalBytes = totalBytes;
+        }
+
+        private synchronized void completed(File file) {
+            completedFiles++;
+            completedBytes += file.length();
+            output.printInfo("[" + completedFiles + "/" + totalFiles + "] "
+                    + langHelper.getLocalizedMessage("UploadingFileSuccess") + " : " + file.getName()
+                    + " (" + FileUtils.byteCountToDisplaySize(completedBytes) + " / " + FileUtils.byteCountToDisplaySize(totalBytes) + ")");
+        }
+    }
+}
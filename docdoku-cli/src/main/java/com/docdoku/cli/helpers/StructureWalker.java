@@ -0,0 +1,203 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a product structure concurrently, processing each part once with a bounded number of workers.
+ * <p>
+ * Messages printed by a part processing are printed together once it is done, in the order parts
+ * were discovered: a part is always printed before its components, and components in the structure order.
+ * A failing part does not stop the walk, failures are returned at the end.
+ */
+public class StructureWalker {
+
+    /**
+     * Processing of one part of the structure
+     */
+    @FunctionalInterface
+    public interface PartVisitor {
+
+        /**
+         * @param partNumber : the part to process
+         * @param revision   : the revision to process, null for components
+         * @param iteration  : the iteration to process, null for components
+         * @param output     : output for the messages of this part
+         * @return the numbers of the components to walk through
+         * @throws Exception if the processing fails
+         */
+        List<String> visit(String partNumber, String revision, Integer iteration, CliOutput output) throws Exception;
+    }
+
+    private static final AtomicInteger WALKER_COUNT = new AtomicInteger();
+
+    private final int jobs;
+    private final CliOutput output;
+
+    public StructureWalker(int jobs, CliOutput output) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("jobs < 1: " + jobs);
+        }
+        this.jobs = jobs;
+        this.output = output;
+    }
+
+    /**
+     * Walk the structure from the given part
+     *
+     * @param recursive : walk through the components, or process only the given part
+     * @return the failures by part number, in discovery order
+     * @throws InterruptedException if interrupted while waiting for the walk to end
+     */
+    public Map<String, Exception> walk(String partNumber, String revision, Integer iteration, boolean recursive,
+                                       PartVisitor visitor) throws InterruptedException {
+        Walk walk = new Walk(visitor, recursive);
+        walk.schedule(partNumber, revision, iteration);
+        return walk.await();
+    }
+
+    /**
+     * Print a summary of the failures returned by a walk, if any
+     *
+     * @param title : localized title of the summary
+     */
+    public static void printFailures(Map<String, Exception> failures, CliOutput output, String title) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        output.printInfo(title + " (" + failures.size() + ") :");
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+            output.printInfo("  " + failure.getKey() + " : " + failure.getValue().getMessage());
+        }
+    }
+
+    private class Walk {
+
+        private final PartVisitor visitor;
+        private final boolean recursive;
+        private final ExecutorService executor;
+        private final Set<String> discovered = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        // Ordered printing, guarded by this
+        private int discoveredCount;
+        private int nextToPrint;
+        private final Map<Integer, Node> completed = new HashMap<>();
+        private final Map<String, Exception> failures = new LinkedHashMap<>();
+
+        private Walk(PartVisitor visitor, boolean recursive) {
+            this.visitor = visitor;
+            this.recursive = recursive;
+            int walkerId = WALKER_COUNT.incrementAndGet();
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(jobs, runnable -> {
+                Thread thread = new Thread(runnable, "dplm-walker-" + walkerId + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void schedule(String partNumber, String revision, Integer iteration) {
+            if (!discovered.add(partNumber)) {
+                return;
+            }
+            int sequence;
+            synchronized (this) {
+                sequence = discoveredCount++;
+            }
+            pending.incrementAndGet();
+            executor.execute(() -> process(new Node(sequence, partNumber, revision, iteration)));
+        }
+
+        private void process(Node node) {
+            try {
+                List<String> components = visitor.visit(node.partNumber, node.revision, node.iteration, node.output);
+                if (recursive && components != null) {
+                    for (String component : components) {
+                        schedule(component, null, null);
+                    }
+                }
+            } catch (Exception e) {
+                node.failure = e;
+                node.output.printException(e);
+            } finally {
+                print(node);
+                if (pending.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+        }
+
+        private synchronized void print(Node node) {
+            completed.put(node.sequence, node);
+            Node next;
+            while ((next = completed.remove(nextToPrint)) != null) {
+                next.output.flush();
+                if (next.failure != null) {
+                    failures.put(next.partNumber, next.failure);
+                }
+                nextToPrint++;
+            }
+        }
+
+        private Map<String, Exception> await() throws InterruptedException {
+            try {
+                done.await();
+            } finally {
+                executor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            synchronized (this) {
+                return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+            }
+        }
+    }
+
+    private class Node {
+
+        private final int sequence;
+        private final String partNumber;
+        private final String revision;
+        private final Integer iteration;
+        private final DeferredOutput output = new DeferredOutput(StructureWalker.this.output);
+        private Exception failure;
+
+        private Node(int sequence, String partNumber, String revision, Integer iteration) {
+            this.sequence = sequence;
+            this.partNumber = partNumber;
+            this.revision = revision;
+            this.iteration = iteration;
+        }
+    }
+}
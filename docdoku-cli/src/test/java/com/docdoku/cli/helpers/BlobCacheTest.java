@@ -0,0 +1,245 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import com.docdoku.api.models.BinaryResourceDTO;
+import com.docdoku.api.transfer.DownloadedFile;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class BlobCacheTest {
+
+    private static final long LAST_MODIFIED = 1500000000000L;
+
+    private File directory;
+    private File cacheDirectory;
+    private BlobCache cache;
+
+    @Before
+    public void createCache() throws IOException {
+        directory = Files.createTempDirectory("dplm-cache").toFile();
+        cacheDirectory = new File(directory, "cache");
+        cache = new BlobCache(cacheDirectory);
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void storeAndRestoreTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, binary(downloaded), downloaded);
+
+        File restored = new File(directory, "restored.stp");
+        Assert.assertEquals(downloaded.getMd5Base64(), cache.restore(key, binary(downloaded), restored));
+        Assert.assertEquals("content", read(restored));
+        Assert.assertTrue(restored.canWrite());
+
+        // Same content under another key is stored once
+        cache.store(BlobCache.partKey("ws", "P-002", "A", 1, "part.stp"), binary(downloaded), downloaded);
+        Assert.assertEquals(1, cache.getBlobCount());
+        Assert.assertEquals(2, cache.getRefCount());
+        Assert.assertEquals(7, cache.getSize());
+
+        Assert.assertNull(cache.restore(BlobCache.partKey("ws", "P-003", "A", 1, "part.stp"), null, restored));
+    }
+
+    @Test
+    public void editedWorkingCopiesDoNotAlterStoreTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, binary(downloaded), downloaded);
+        File first = new File(directory, "first.stp");
+        cache.restore(key, null, first);
+
+        write(downloaded.getFile(), "edited");
+        write(first, "edited");
+
+        File second = new File(directory, "second.stp");
+        Assert.assertEquals(downloaded.getMd5Base64(), cache.restore(key, null, second));
+        Assert.assertEquals("content", read(second));
+    }
+
+    @Test
+    public void missWhenServerBinaryChangedTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, binary(downloaded), downloaded);
+        File restored = new File(directory, "restored.stp");
+
+        BinaryResourceDTO resized = binary(downloaded);
+        resized.setContentLength(8L);
+        Assert.assertNull(cache.restore(key, resized, restored));
+
+        BinaryResourceDTO modified = binary(downloaded);
+        modified.setLastModified(new Date(LAST_MODIFIED + 1000));
+        Assert.assertNull(cache.restore(key, modified, restored));
+        Assert.assertFalse(restored.exists());
+
+        Assert.assertNotNull(cache.restore(key, binary(downloaded), restored));
+    }
+
+    @Test
+    public void pruneLeastRecentlyUsedTest() throws IOException {
+        DownloadedFile first = download("first.stp", "0123456789");
+        DownloadedFile second = download("second.stp", "abcdefghij");
+        DownloadedFile third = download("third.stp", "ABCDEFGHIJ");
+        String firstKey = BlobCache.partKey("ws", "P-001", "A", 1, "first.stp");
+        String secondKey = BlobCache.partKey("ws", "P-002", "A", 1, "second.stp");
+        String thirdKey = BlobCache.partKey("ws", "P-003", "A", 1, "third.stp");
+        cache.store(firstKey, null, first);
+        cache.store(secondKey, null, second);
+        cache.store(thirdKey, null, third);
+        setLastAccess(first, 1000);
+        setLastAccess(second, 2000);
+        setLastAccess(third, 3000);
+
+        // Restoring the first file makes it the most recently used
+        cache.restore(firstKey, null, new File(directory, "restored.stp"));
+        Assert.assertEquals(1, cache.prune(20));
+
+        Assert.assertEquals(2, cache.getBlobCount());
+        Assert.assertEquals(20, cache.getSize());
+        Assert.assertFalse(blobFile(second).exists());
+        // The reference to the evicted file is dropped
+        Assert.assertEquals(2, cache.getRefCount());
+        Assert.assertNull(cache.restore(secondKey, null, new File(directory, "second-restored.stp")));
+        Assert.assertNotNull(cache.restore(thirdKey, null, new File(directory, "third-restored.stp")));
+
+        Assert.assertEquals(2, cache.clear());
+        Assert.assertEquals(0, cache.getBlobCount());
+        Assert.assertEquals(0, cache.getRefCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void evictWhenStoreExceedsMaxSizeTest() throws IOException {
+        cache.setMaxSize(15);
+        DownloadedFile first = download("first.stp", "0123456789");
+        DownloadedFile second = download("second.stp", "abcdefghij");
+        cache.store(BlobCache.partKey("ws", "P-001", "A", 1, "first.stp"), null, first);
+        setLastAccess(first, 1000);
+        cache.store(BlobCache.partKey("ws", "P-002", "A", 1, "second.stp"), null, second);
+
+        Assert.assertEquals(1, cache.getBlobCount());
+        Assert.assertTrue(blobFile(second).exists());
+        // Saved for the next runs
+        Assert.assertEquals(15, new BlobCache(cacheDirectory).getMaxSize());
+    }
+
+    @Test
+    public void deleteDanglingRefTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, null, downloaded);
+        Assert.assertTrue(blobFile(downloaded).delete());
+
+        Assert.assertNull(cache.restore(key, null, new File(directory, "restored.stp")));
+        Assert.assertEquals(0, cache.getRefCount());
+    }
+
+    @Test
+    public void evictCorruptedBlobTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, null, downloaded);
+
+        // Same size, other content, as through a hard link made by a former version
+        File blob = blobFile(downloaded);
+        Assert.assertTrue(blob.setWritable(true));
+        write(blob, "CONTENT");
+        Assert.assertTrue(blob.setLastModified(blob.lastModified() + 10000));
+
+        Assert.assertNull(cache.restore(key, null, new File(directory, "restored.stp")));
+        Assert.assertFalse(blob.exists());
+        Assert.assertEquals(0, cache.getBlobCount());
+        Assert.assertEquals(0, cache.getRefCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void keepTouchedBlobWithSameContentTest() throws IOException {
+        DownloadedFile downloaded = download("part.stp", "content");
+        String key = BlobCache.partKey("ws", "P-001", "A", 1, "part.stp");
+        cache.store(key, null, downloaded);
+        File blob = blobFile(downloaded);
+        Assert.assertTrue(blob.setLastModified(blob.lastModified() + 10000));
+
+        // Checked once, then trusted until it changes again
+        Assert.assertNotNull(cache.restore(key, null, new File(directory, "first.stp")));
+        Assert.assertNotNull(cache.restore(key, null, new File(directory, "second.stp")));
+        Assert.assertEquals(1, cache.getBlobCount());
+    }
+
+    private DownloadedFile download(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        write(file, content);
+        return DownloadedFile.of(file);
+    }
+
+    private static BinaryResourceDTO binary(DownloadedFile file) {
+        BinaryResourceDTO binary = new BinaryResourceDTO();
+        binary.setName(file.getFile().getName());
+        binary.setContentLength(file.getLength());
+        binary.setLastModified(new Date(LAST_MODIFIED));
+        return binary;
+    }
+
+    private File blobFile(DownloadedFile file) {
+        String sha256 = toHex(file.getSha256());
+        return new File(new File(new File(cacheDirectory, "blobs"), sha256.substring(0, 2)), sha256);
+    }
+
+    private void setLastAccess(DownloadedFile file, long time) {
+        Assert.assertTrue(new File(new File(cacheDirectory, "access"), toHex(file.getSha256())).setLastModified(time));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
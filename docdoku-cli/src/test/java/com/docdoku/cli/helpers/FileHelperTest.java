@@ -0,0 +1,104 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+@RunWith(JUnit4.class)
+public class FileHelperTest {
+
+    private File workingDirectory;
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        workingDirectory = Files.createTempDirectory("dplm-upload").toFile();
+        file = new File(workingDirectory, "part.stp");
+        Files.write(file.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void deleteWorkingDirectory() throws IOException {
+        FileUtils.deleteDirectory(workingDirectory);
+    }
+
+    @Test
+    public void skipUnchangedUploadTest() throws IOException {
+        String target = FileHelper.partTarget("ws", "P-001", "A", 1);
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, target));
+
+        FileHelper.saveUploadMetadata(meta, FileHelper.checkUpload(meta, file, target));
+        Assert.assertTrue(FileHelper.isUnchanged(meta, file, target));
+
+        // Same content, modification date changed
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        Assert.assertTrue(FileHelper.isUnchanged(meta, file, target));
+
+        Files.write(file.toPath(), "modified".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(file.lastModified() + 10000));
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, target));
+    }
+
+    @Test
+    public void uploadToOtherTargetTest() throws IOException {
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        String target = FileHelper.partTarget("ws", "P-001", "A", 1);
+        FileHelper.saveUploadMetadata(meta, FileHelper.checkUpload(meta, file, target));
+
+        // The file content is not on any of these iterations yet
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, FileHelper.partTarget("ws", "OTHER", "B", 1)));
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, FileHelper.partTarget("ws", "P-001", "B", 1)));
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, FileHelper.partTarget("ws", "P-001", "A", 2)));
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, FileHelper.partTarget("other", "P-001", "A", 1)));
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, FileHelper.documentTarget("ws", "P-001", "A", 1)));
+    }
+
+    @Test
+    public void recordCheckedContentTest() throws IOException {
+        String target = FileHelper.partTarget("ws", "P-001", "A", 1);
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        FileHelper.saveUploadMetadata(meta, FileHelper.checkUpload(meta, file, target));
+
+        Files.write(file.toPath(), "uploaded".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(file.lastModified() + 10000));
+        FileHelper.UploadCheck check = FileHelper.checkUpload(meta, file, target);
+        Assert.assertFalse(check.isUnchanged());
+        Assert.assertEquals(FileHelper.digest(file), check.getDigest());
+
+        // Modified while uploaded, the content recorded is the one checked and uploaded
+        Files.write(file.toPath(), "modified".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(file.lastModified() + 20000));
+        FileHelper.saveUploadMetadata(meta, check);
+        Assert.assertFalse(FileHelper.isUnchanged(meta, file, target));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.json.Json;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+@RunWith(JUnit4.class)
+public class MetaDirectoryManagerTest {
+
+    private File workingDirectory;
+
+    @Before
+    public void createWorkingDirectory() throws IOException {
+        workingDirectory = Files.createTempDirectory("dplm-meta").toFile();
+    }
+
+    @After
+    public void deleteWorkingDirectory() throws IOException {
+        FileUtils.deleteDirectory(workingDirectory);
+    }
+
+    @Test
+    public void migrateFlatIndexTest() throws IOException {
+        String file = new File(workingDirectory, "part.stp").getAbsolutePath();
+        String other = new File(workingDirectory, "doc.txt").getAbsolutePath();
+        writeIndex(Json.createObjectBuilder()
+                .add(file + ".number", "P-001")
+                .add(file + ".workspaceId", "ws")
+                .add(file + ".revision", "A")
+                .add(file + ".iteration", "2")
+                .add(file + ".lastModifiedDate", "1500000000000")
+                .add(other + ".documentMasterId", "D-001")
+                .add(other + ".iteration", "not a number")
+                .add(other + ".lastModifiedDate", 42)
+                .build().toString());
+
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        Assert.assertEquals("P-001", meta.getPartNumber(file));
+        Assert.assertEquals("ws", meta.getWorkspace(file));
+        Assert.assertEquals("A", meta.getRevision(file));
+        Assert.assertEquals(2, meta.getIteration(file));
+        Assert.assertEquals(1500000000000L, meta.getLastModifiedDate(file));
+
+        // Bad values are dropped, the rest of the entry is kept
+        Assert.assertEquals("D-001", meta.getDocumentId(other));
+        Assert.assertEquals(0, meta.getIteration(other));
+        Assert.assertEquals(0, meta.getLastModifiedDate(other));
+
+        // The migrated index is written in the current format on the next change
+        meta.setDigest(file, "digest", "ws/parts/P-001/A/2");
+        MetaDirectoryManager reloaded = new MetaDirectoryManager(workingDirectory);
+        Assert.assertEquals("P-001", reloaded.getPartNumber(file));
+        Assert.assertEquals(2, reloaded.getIteration(file));
+        Assert.assertEquals("digest", reloaded.getDigest(file));
+        Assert.assertEquals("ws/parts/P-001/A/2", reloaded.getDigestTarget(file));
+        Assert.assertEquals("D-001", reloaded.getDocumentId(other));
+    }
+
+    @Test
+    public void malformedEntryTest() throws IOException {
+        writeIndex("{\"version\":2,\"files\":{\"a.txt\":{\"documentMasterId\":\"D-001\"},\"b.txt\":[]}}");
+
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        Assert.assertEquals("D-001", meta.getDocumentId(new File(workingDirectory, "a.txt").getAbsolutePath()));
+        Assert.assertNull(meta.getDocumentId(new File(workingDirectory, "b.txt").getAbsolutePath()));
+    }
+
+    @Test
+    public void corruptIndexIsKeptAsideTest() throws IOException {
+        writeIndex("{\"version\":2,\"files\":");
+
+        MetaDirectoryManager meta = new MetaDirectoryManager(workingDirectory);
+        Assert.assertNull(meta.getDocumentId(new File(workingDirectory, "a.txt").getAbsolutePath()));
+        Assert.assertTrue(new File(workingDirectory, ".dplm/index.json.bak").exists());
+    }
+
+    @Test
+    public void currentDirectoryTest() throws IOException {
+        // The parent of a bare file name is null
+        File parent = new File("part.stp").getParentFile();
+        Assert.assertNull(parent);
+        File metaDirectory = new File(".dplm").getAbsoluteFile();
+        boolean existed = metaDirectory.exists();
+        try {
+            MetaDirectoryManager meta = new MetaDirectoryManager(parent);
+            Assert.assertTrue(metaDirectory.isDirectory());
+            Assert.assertNull(meta.getPartNumber("part.stp"));
+        } finally {
+            if (!existed) {
+                FileUtils.deleteDirectory(metaDirectory);
+            }
+        }
+    }
+
+    private void writeIndex(String content) throws IOException {
+        File metaDirectory = new File(workingDirectory, ".dplm");
+        metaDirectory.mkdir();
+        Files.write(new File(metaDirectory, "index.json").toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import com.docdoku.api.client.ApiException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class ParallelUploaderTest {
+
+    private final CliOutput output = CliOutput.getOutput(CliOutput.formats.JSON, Locale.ENGLISH);
+    private final LangHelper langHelper = new LangHelper(Locale.ENGLISH);
+
+    @Test
+    public void retryTransientFailuresTest() throws InterruptedException {
+        ParallelUploader uploader = new ParallelUploader(2, 3, 1, output, langHelper);
+        File file = new File("part.stp");
+
+        // Network failure, then server error, then success
+        AtomicInteger attempts = new AtomicInteger();
+        Map<File, Exception> failures = uploader.upload(Collections.singletonList(file), f -> {
+            int attempt = attempts.incrementAndGet();
+            if (attempt == 1) {
+                throw new ApiException(new IOException("Connection reset"));
+            }
+            if (attempt == 2) {
+                throw new ApiException(503, "Service Unavailable");
+            }
+        });
+
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void giveUpAfterMaxAttemptsTest() throws InterruptedException {
+        ParallelUploader uploader = new ParallelUploader(2, 3, 1, output, langHelper);
+        File file = new File("part.stp");
+        ApiException throttled = new ApiException(429, "Too Many Requests");
+
+        AtomicInteger attempts = new AtomicInteger();
+        Map<File, Exception> failures = uploader.upload(Collections.singletonList(file), f -> {
+            attempts.incrementAndGet();
+            throw throttled;
+        });
+
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertSame(throttled, failures.get(file));
+    }
+
+    @Test
+    public void doNotRetryOtherFailuresTest() throws InterruptedException {
+        ParallelUploader uploader = new ParallelUploader(1, 3, 1, output, langHelper);
+        List<ApiException> errors = Arrays.asList(
+                new ApiException(403, "Forbidden"),
+                new ApiException(404, "Not Found"),
+                new ApiException("No network cause"));
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < errors.size(); i++) {
+            files.add(new File("part-" + i + ".stp"));
+        }
+
+        Map<File, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        Map<File, Exception> failures = uploader.upload(files, f -> {
+            attempts.computeIfAbsent(f, key -> new AtomicInteger()).incrementAndGet();
+            throw errors.get(files.indexOf(f));
+        });
+
+        for (int i = 0; i < files.size(); i++) {
+            Assert.assertEquals(1, attempts.get(files.get(i)).get());
+            Assert.assertSame(errors.get(i), failures.get(files.get(i)));
+        }
+    }
+
+    @Test
+    public void failuresDoNotStopOtherUploadsTest() throws InterruptedException {
+        ParallelUploader uploader = new ParallelUploader(3, 1, 1, output, langHelper);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(new File("part-" + i + ".stp"));
+        }
+        File slowFailure = files.get(1);
+        File fastFailure = files.get(4);
+        CountDownLatch fastFailed = new CountDownLatch(1);
+
+        Set<File> uploaded = ConcurrentHashMap.newKeySet();
+        Map<File, Exception> failures = uploader.upload(files, f -> {
+            if (f.equals(slowFailure)) {
+                // Fails after the later file
+                await(fastFailed);
+                throw new ApiException(400, "Bad Request");
+            }
+            if (f.equals(fastFailure)) {
+                fastFailed.countDown();
+                throw new ApiException(400, "Bad Request");
+            }
+            uploaded.add(f);
+        });
+
+        Assert.assertEquals(4, uploaded.size());
+        Assert.assertTrue(uploaded.containsAll(Arrays.asList(files.get(0), files.get(2), files.get(3), files.get(5))));
+        // Failures are reported in the order of the files, not of their completion
+        Assert.assertEquals(Arrays.asList(slowFailure, fastFailure), new ArrayList<>(failures.keySet()));
+    }
+
+    @Test
+    public void uploadNothingTest() throws InterruptedException {
+        ParallelUploader uploader = new ParallelUploader(2, 3, 1, output, langHelper);
+        Assert.assertTrue(uploader.upload(Collections.emptyList(), f -> Assert.fail()).isEmpty());
+    }
+
+    private static void await(CountDownLatch latch) throws ApiException {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new ApiException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * DocDoku, Professional Open Source
+ * Copyright 2006 - 2017 DocDoku SARL
+ *
+ * This file is part of DocDokuPLM.
+ *
+ * DocDokuPLM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * DocDokuPLM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with DocDokuPLM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.docdoku.cli.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class StructureWalkerTest {
+
+    private final RecordingOutput output = new RecordingOutput();
+    private final Map<String, List<String>> structure = new HashMap<>();
+    private final Map<String, AtomicInteger> visits = new ConcurrentHashMap<>();
+
+    @Test
+    public void processSharedSubAssemblyOnceTest() throws InterruptedException {
+        structure.put("A", Arrays.asList("B", "C"));
+        structure.put("B", Arrays.asList("D", "E"));
+        structure.put("C", Arrays.asList("D"));
+        structure.put("D", Arrays.asList("E"));
+
+        Map<String, Exception> failures = new StructureWalker(4, output).walk("A", "A", 1, true, this::visit);
+
+        Assert.assertTrue(failures.isEmpty());
+        for (String part : Arrays.asList("A", "B", "C", "D", "E")) {
+            Assert.assertEquals(part, 1, visits.get(part).get());
+        }
+        Assert.assertEquals(5, output.messages.size());
+    }
+
+    @Test
+    public void printInDiscoveryOrderTest() throws InterruptedException {
+        structure.put("A", Arrays.asList("B", "C"));
+        structure.put("B", Arrays.asList("E"));
+        structure.put("C", Arrays.asList("D"));
+        CountDownLatch dVisited = new CountDownLatch(1);
+
+        // B completes after C and D, which it waits for
+        new StructureWalker(4, output).walk("A", "A", 1, true, (partNumber, revision, iteration, partOutput) -> {
+            if ("B".equals(partNumber)) {
+                Assert.assertTrue(dVisited.await(10, TimeUnit.SECONDS));
+            }
+            List<String> components = visit(partNumber, revision, iteration, partOutput);
+            partOutput.printInfo(partNumber + " done");
+            if ("D".equals(partNumber)) {
+                dVisited.countDown();
+            }
+            return components;
+        });
+
+        Assert.assertEquals(Arrays.asList("A A 1", "A done", "B", "B done", "C", "C done", "D", "D done", "E", "E done"),
+                output.messages);
+    }
+
+    @Test
+    public void collectFailuresTest() throws InterruptedException {
+        structure.put("A", Arrays.asList("B", "C", "D"));
+        structure.put("B", Arrays.asList("E"));
+        structure.put("D", Arrays.asList("F"));
+        Exception bFailure = new Exception("B failed");
+        Exception dFailure = new Exception("D failed");
+
+        Map<String, Exception> failures = new StructureWalker(4, output).walk("A", "A", 1, true, (partNumber, revision, iteration, partOutput) -> {
+            List<String> components = visit(partNumber, revision, iteration, partOutput);
+            if ("B".equals(partNumber)) {
+                throw bFailure;
+            }
+            if ("D".equals(partNumber)) {
+                throw dFailure;
+            }
+            return components;
+        });
+
+        // The walk goes on, without the components of the failed parts
+        Assert.assertEquals(Arrays.asList("B", "D"), new ArrayList<>(failures.keySet()));
+        Assert.assertSame(bFailure, failures.get("B"));
+        Assert.assertSame(dFailure, failures.get("D"));
+        Assert.assertEquals(1, visits.get("C").get());
+        Assert.assertNull(visits.get("E"));
+        Assert.assertNull(visits.get("F"));
+        // Errors are printed in the place of their part
+        Assert.assertEquals(Arrays.asList("A A 1", "B", "error B failed", "C", "D", "error D failed"), output.messages);
+    }
+
+    @Test
+    public void processOnlyRootWhenNotRecursiveTest() throws InterruptedException {
+        structure.put("A", Arrays.asList("B", "C"));
+
+        new StructureWalker(4, output).walk("A", "A", 1, false, this::visit);
+
+        Assert.assertEquals(Collections.singletonList("A A 1"), output.messages);
+        Assert.assertNull(visits.get("B"));
+    }
+
+    private List<String> visit(String partNumber, String revision, Integer iteration, CliOutput partOutput) {
+        visits.computeIfAbsent(partNumber, part -> new AtomicInteger()).incrementAndGet();
+        partOutput.printInfo(revision == null ? partNumber : partNumber + " " + revision + " " + iteration);
+        return structure.getOrDefault(partNumber, Collections.emptyList());
+    }
+
+    private static class RecordingOutput extends JSONOutput {
+
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void printInfo(String s) {
+            messages.add(s);
+        }
+
+        @Override
+        public void printException(Exception e) {
+            messages.add("error " + e.getMessage());
+        }
+    }
+}